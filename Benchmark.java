@@ -0,0 +1,151 @@
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+/**
+ * Micro benchmarks for the hot paths of GameState, Minimax and PatternEvaluator, run on fixed suites of opening,
+ * midgame and endgame positions (see Positions) at board sizes 8, 10 and 16.
+ *
+ * Every benchmark is warmed up first so the JIT has compiled it, then measured over several
+ * iterations. For each it prints the time per operation (mean and best iteration) and the bytes
+ * allocated per operation, read from the thread's allocation counter. Run it before and after a
+ * change, with the same arguments, to compare against a baseline.
+ *
+ * Usage: java Benchmark [filter] [iterations] [millisPerIteration]
+ * where filter only runs benchmarks whose name contains it, e.g. "decideMove" or "size 10".
+ */
+public class Benchmark {
+    private static final int[] SIZES = {8, 10, 16};
+    private static final int POSITIONS = 16;    // Positions per phase and size
+    private static final long SEED = 42;
+    private static final int[] DEPTHS = {2, 4}; // Fixed depths for decideMove
+    private static final int TABLE_ENTRIES = 1 << 16;
+
+    private static final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static long sink; // Results are added here, so the JIT cannot drop the measured code
+
+    /**
+     * A benchmarked operation on the i-th position of a suite.
+     */
+    private interface Operation {
+        void run(int i);
+    }
+
+    private final String filter;
+    private final int iterations;
+    private final long iterationNanos;
+
+    private Benchmark(String filter, int iterations, long iterationMillis) {
+        this.filter = filter;
+        this.iterations = iterations;
+        this.iterationNanos = iterationMillis * 1_000_000;
+    }
+
+    public static void main(String[] args) {
+        String filter = args.length > 0 ? args[0] : "";
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        long millis = args.length > 2 ? Long.parseLong(args[2]) : 500;
+        Benchmark benchmark = new Benchmark(filter, iterations, millis);
+
+        System.out.printf("%-36s %-18s %14s %14s %12s%n", "benchmark", "positions", "ns/op", "best ns/op", "bytes/op");
+        for (int size : SIZES) {
+            benchmark.runSuite(size, "opening", Positions.opening(size, POSITIONS, SEED));
+            benchmark.runSuite(size, "midgame", Positions.midgame(size, POSITIONS, SEED));
+            benchmark.runSuite(size, "endgame", Positions.endgame(size, POSITIONS, SEED));
+        }
+        if (sink == 42) {
+            System.out.println();
+        }
+    }
+
+    private void runSuite(int size, String phase, List<GameState> suite) {
+        String positions = phase + " size " + size;
+        GameState[] states = suite.toArray(new GameState[0]);
+        int n = states.length;
+        int[] moves = new int[size * size];
+        int[] firstMoves = new int[n];
+        for (int i = 0; i < n; i++) {
+            states[i].legalMoves(moves);
+            firstMoves[i] = moves[0];
+        }
+
+        run("legalMoves(int[])", positions, n, i -> sink += states[i].legalMoves(moves));
+        run("legalMoves()", positions, n, i -> sink += states[i].legalMoves().size());
+        run("copy+insertToken", positions, n, i -> {
+            GameState s = states[i].copy();
+            sink += s.insertToken(firstMoves[i]) ? 1 : 0;
+        });
+        run("applyMove+undoMove", positions, n, i -> {
+            states[i].applyMove(firstMoves[i]);
+            states[i].undoMove();
+        });
+        run("countTokens()", positions, n, i -> sink += states[i].countTokens()[0]);
+        run("countTokens(player)", positions, n, i -> sink += states[i].countTokens(1));
+        run("isFinished", positions, n, i -> sink += states[i].isFinished() ? 1 : 0);
+
+        Minimax evaluator = new Minimax(states[0], 1, 0, TranspositionTable.ReplacementPolicy.ALWAYS);
+        run("evaluateBoard", positions, n, i -> sink += evaluator.evaluateBoard(states[i], 1));
+        PatternEvaluator patterns = new PatternEvaluator(size); // The weights do not change the cost of a lookup
+        run("PatternEvaluator.evaluate", positions, n, i -> sink += patterns.evaluate(states[i], 1));
+
+        for (int depth : DEPTHS) {
+            Minimax[] searchers = new Minimax[n];
+            for (int i = 0; i < n; i++) {
+                // A small table, cleared before every call so each call searches the same tree
+                searchers[i] = new Minimax(states[i], depth, TABLE_ENTRIES, TranspositionTable.ReplacementPolicy.DEPTH_PREFERRED);
+                searchers[i].setEndgameThreshold(0);
+            }
+            run("decideMove depth " + depth, positions, n, i -> {
+                searchers[i].getTranspositionTable().clear();
+                sink += searchers[i].decideMove(states[i]).col;
+            });
+        }
+    }
+
+    /**
+     * Warms up and measures one operation, cycling through the positions, and prints the results.
+     */
+    private void run(String name, String positions, int n, Operation op) {
+        if (!(name + " " + positions).contains(filter)) {
+            return;
+        }
+        long ops = calibrate(n, op);
+        double bestNanos = Double.MAX_VALUE;
+        long totalNanos = 0;
+        long totalBytes = 0;
+        for (int iteration = 0; iteration < iterations; iteration++) {
+            long bytesBefore = threads.getCurrentThreadAllocatedBytes();
+            long start = System.nanoTime();
+            for (long k = 0; k < ops; k++) {
+                op.run((int) (k % n));
+            }
+            long elapsed = System.nanoTime() - start;
+            totalBytes += threads.getCurrentThreadAllocatedBytes() - bytesBefore;
+            totalNanos += elapsed;
+            bestNanos = Math.min(bestNanos, (double) elapsed / ops);
+        }
+        long measured = ops * iterations;
+        System.out.printf("%-36s %-18s %14.1f %14.1f %12.1f%n", name, positions,
+                (double) totalNanos / measured, bestNanos, (double) totalBytes / measured);
+    }
+
+    /**
+     * Runs the operation for about one iteration's time as warm-up, and returns how many
+     * operations fit in one iteration.
+     */
+    private long calibrate(int n, Operation op) {
+        long ops = 0;
+        long start = System.nanoTime();
+        long deadline = start + iterationNanos;
+        long now;
+        do {
+            for (int k = 0; k < n; k++) {
+                op.run(k);
+            }
+            ops += n;
+            now = System.nanoTime();
+        } while (now < deadline);
+        return Math.max(n, ops * iterationNanos / (now - start));
+    }
+}
@@ -0,0 +1,428 @@
+import java.util.Arrays;
+
+/**
+ * Game state for 8x8 boards backed by two 64-bit bitboards, one per player.
+ * Square (col, row) is stored in bit col*8 + row, so moving one row is a shift by 1
+ * and moving one column is a shift by 8. Move generation is done with shift-and-mask
+ * operations over all squares at once, and flips are found with precomputed rays from
+ * the square played, instead of walking each direction square by square.
+ * Behaves exactly like the array-based GameState.
+ */
+public class BitboardGameState extends GameState {
+    static final int SIZE = 8;
+
+    // Masks removing the bits that wrapped around into the neighbouring column after a row shift
+    private static final long NOT_ROW_0 = 0xFEFEFEFEFEFEFEFEL;
+    private static final long NOT_ROW_7 = 0x7F7F7F7F7F7F7F7FL;
+
+    private static final Zobrist zobrist = Zobrist.forSize(SIZE);
+
+    // RAYS[square * 8 + d]: the squares seen from square in direction d, not including square itself.
+    // Directions 0-3 go towards higher bit indices, 4-7 towards lower ones.
+    private static final long[] RAYS = new long[8 * SIZE * SIZE];
+
+    static {
+        int[][] steps = {{0, 1}, {1, 0}, {1, 1}, {1, -1}, {0, -1}, {-1, 0}, {-1, -1}, {-1, 1}};
+        for (int d = 0; d < 8; d++) {
+            for (int col = 0; col < SIZE; col++) {
+                for (int row = 0; row < SIZE; row++) {
+                    long ray = 0;
+                    for (int c = col + steps[d][0], r = row + steps[d][1]; c >= 0 && c < SIZE && r >= 0 && r < SIZE; c += steps[d][0], r += steps[d][1]) {
+                        ray |= bit(c, r);
+                    }
+                    RAYS[(col * SIZE + row) * 8 + d] = ray;
+                }
+            }
+        }
+    }
+
+    private long black;         // Bits of the squares holding a token of player 1
+    private long white;         // Bits of the squares holding a token of player 2
+    private int currentPlayer;  // The player who is next to put a token on the board. Value is 1 or 2.
+    private long hash;          // Zobrist hash of the position, kept up to date by every change
+
+    // Undo information for applyMove/undoMove: per applied move the square played (PASS for a pass) and the flipped tokens
+    private int[] moveSquares = new int[16];
+    private long[] moveFlips = new long[16];
+    private long[] moveHashes = new long[16];
+    private int moveTop;
+
+    /**
+     * Initializes an 8x8 board in the standard starting position.
+     *
+     * @param playerToStart The player who will go first. Should be 1 (black) or 2 (white).
+     */
+    public BitboardGameState(int playerToStart){
+        super(SIZE);
+        int half = SIZE/2-1;
+        black = bit(half, half) | bit(half+1, half+1);
+        white = bit(half, half+1) | bit(half+1, half);
+        currentPlayer = playerToStart;
+        hash = computeHash(black, white, currentPlayer);
+    }
+
+    /**
+     * Constructs a new game state that equals the one represented by the supplied 8x8 board and player.
+     *
+     * @param board An 8x8 array with values 0 (empty), 1 (black) or 2 (white).
+     * @param playerToTakeTurn The player who will be the first to take a turn.
+     */
+    public BitboardGameState(int[][] board, int playerToTakeTurn){
+        super(SIZE);
+        if (board.length != SIZE) {
+            throw new IllegalArgumentException("Bitboards only support " + SIZE + "x" + SIZE + " boards");
+        }
+        for (int col = 0; col < SIZE; col++) {
+            for (int row = 0; row < SIZE; row++) {
+                if (board[col][row] == 1) {
+                    black |= bit(col, row);
+                } else if (board[col][row] == 2) {
+                    white |= bit(col, row);
+                }
+            }
+        }
+        currentPlayer = playerToTakeTurn;
+        hash = computeHash(black, white, currentPlayer);
+    }
+
+    private BitboardGameState(long black, long white, int currentPlayer){
+        super(SIZE);
+        this.black = black;
+        this.white = white;
+        this.currentPlayer = currentPlayer;
+        this.hash = computeHash(black, white, currentPlayer);
+    }
+
+    @Override
+    public GameState copy(){
+        return new BitboardGameState(black, white, currentPlayer);
+    }
+
+    /**
+     * Returns a freshly built array with the contents of the board. Changes to the array
+     * are not reflected in this game state.
+     */
+    @Override
+    public int[][] getBoard(){
+        int[][] board = new int[SIZE][SIZE];
+        for (int col = 0; col < SIZE; col++) {
+            for (int row = 0; row < SIZE; row++) {
+                long b = bit(col, row);
+                if ((black & b) != 0) {
+                    board[col][row] = 1;
+                } else if ((white & b) != 0) {
+                    board[col][row] = 2;
+                }
+            }
+        }
+        return board;
+    }
+
+    @Override
+    public int getPlayerInTurn(){
+        return currentPlayer;
+    }
+
+    @Override
+    public long getHash(){
+        return hash;
+    }
+
+    @Override
+    public void changePlayer(){
+        currentPlayer = currentPlayer == 1 ? 2 : 1;
+        hash ^= zobrist.whiteToMove();
+    }
+
+    @Override
+    public boolean isFinished(){
+        return moveMask(black, white) == 0 && moveMask(white, black) == 0;
+    }
+
+    @Override
+    public boolean hasLegalMove(int player){
+        return player == 1 ? moveMask(black, white) != 0 : moveMask(white, black) != 0;
+    }
+
+    @Override
+    public int countLegalMoves(int player){
+        return Long.bitCount(player == 1 ? moveMask(black, white) : moveMask(white, black));
+    }
+
+    @Override
+    public int[] countTokens(){
+        return new int[]{Long.bitCount(black), Long.bitCount(white)};
+    }
+
+    @Override
+    public int countTokens(int player){
+        return Long.bitCount(player == 1 ? black : white);
+    }
+
+    @Override
+    public int positionalScore(int player, Utility utility){
+        long own = player == 1 ? black : white;
+        long opp = player == 1 ? white : black;
+        int[] values = utility.distinctValues();
+        long[] masks = utility.valueMasks();
+        int score = 0;
+        for (int k = 0; k < values.length; k++) {
+            score += values[k] * (Long.bitCount(own & masks[k]) - Long.bitCount(opp & masks[k]));
+        }
+        return score;
+    }
+
+    @Override
+    public boolean insertToken(int square){
+        long flipped = capturedBy(square);
+        if (flipped == 0) {
+            return false;
+        }
+        play(1L << square, flipped);
+        return true;
+    }
+
+    @Override
+    public boolean applyMove(int square){
+        long flipped = capturedBy(square);
+        if (flipped == 0) {
+            return false;
+        }
+        long previousHash = hash;
+        play(1L << square, flipped);
+        pushMove(square, flipped, previousHash);
+        return true;
+    }
+
+    @Override
+    public void applyPass(){
+        pushMove(PASS, 0, hash);
+        changePlayer();
+    }
+
+    @Override
+    public void undoMove(){
+        moveTop--;
+        currentPlayer = currentPlayer == 1 ? 2 : 1;
+        hash = moveHashes[moveTop];
+        int square = moveSquares[moveTop];
+        if (square == PASS) {
+            return;
+        }
+        long move = 1L << square;
+        long flipped = moveFlips[moveTop];
+        if (currentPlayer == 1) {
+            black &= ~(move | flipped);
+            white |= flipped;
+        } else {
+            white &= ~(move | flipped);
+            black |= flipped;
+        }
+    }
+
+    /**
+     * Returns the tokens the current player captures by putting a token on the given square,
+     * or 0 if that is not a legal move.
+     */
+    private long capturedBy(int square){
+        if (square < 0 || square >= SIZE * SIZE) {
+            return 0;
+        }
+        long move = 1L << square;
+        if (((black | white) & move) != 0) {
+            return 0;
+        }
+        return currentPlayer == 1 ? flips(move, black, white) : flips(move, white, black);
+    }
+
+    /**
+     * Puts the current player's token on {@code move}, turns {@code flipped} and passes the turn.
+     */
+    private void play(long move, long flipped){
+        int opponent = currentPlayer == 1 ? 2 : 1;
+        if (currentPlayer == 1) {
+            black |= move | flipped;
+            white &= ~flipped;
+        } else {
+            white |= move | flipped;
+            black &= ~flipped;
+        }
+        hash ^= zobrist.token(currentPlayer, Long.numberOfTrailingZeros(move));
+        for (long f = flipped; f != 0; f &= f - 1) {
+            int square = Long.numberOfTrailingZeros(f);
+            hash ^= zobrist.token(currentPlayer, square) ^ zobrist.token(opponent, square);
+        }
+        changePlayer();
+    }
+
+    private static long computeHash(long black, long white, int currentPlayer){
+        long h = currentPlayer == 2 ? zobrist.whiteToMove() : 0;
+        for (long b = black; b != 0; b &= b - 1) {
+            h ^= zobrist.token(1, Long.numberOfTrailingZeros(b));
+        }
+        for (long w = white; w != 0; w &= w - 1) {
+            h ^= zobrist.token(2, Long.numberOfTrailingZeros(w));
+        }
+        return h;
+    }
+
+    private void pushMove(int square, long flipped, long previousHash){
+        if (moveTop == moveSquares.length) {
+            moveSquares = Arrays.copyOf(moveSquares, moveSquares.length * 2);
+            moveFlips = Arrays.copyOf(moveFlips, moveFlips.length * 2);
+            moveHashes = Arrays.copyOf(moveHashes, moveHashes.length * 2);
+        }
+        moveSquares[moveTop] = square;
+        moveFlips[moveTop] = flipped;
+        moveHashes[moveTop] = previousHash;
+        moveTop++;
+    }
+
+    @Override
+    public int legalMoves(int[] moves){
+        long mask = legalMoveMask();
+        int count = 0;
+        while (mask != 0) {
+            moves[count++] = Long.numberOfTrailingZeros(mask);
+            mask &= mask - 1;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the legal moves of the current player as a mask with bit col*8 + row set
+     * for every square where a token can be put.
+     */
+    public long legalMoveMask(){
+        return currentPlayer == 1 ? moveMask(black, white) : moveMask(white, black);
+    }
+
+    /**
+     * Returns the bitboard of the given player's tokens.
+     *
+     * @param player 1 (black) or 2 (white)
+     */
+    public long tokens(int player){
+        return player == 1 ? black : white;
+    }
+
+    /**
+     * Finds the canonical form by transforming the two bitboards with Symmetry.transformBits and
+     * comparing them as unsigned numbers, which is the order of GameState.canonicalSymmetry.
+     */
+    @Override
+    public int canonicalSymmetry(){
+        int best = Symmetry.IDENTITY;
+        long bestBlack = black;
+        long bestWhite = white;
+        for (int t = 1; t < Symmetry.COUNT; t++) {
+            long b = Symmetry.transformBits(black, t);
+            int order = Long.compareUnsigned(b, bestBlack);
+            if (order > 0) {
+                continue;
+            }
+            long w = Symmetry.transformBits(white, t);
+            if (order < 0 || Long.compareUnsigned(w, bestWhite) < 0) {
+                best = t;
+                bestBlack = b;
+                bestWhite = w;
+            }
+        }
+        return best;
+    }
+
+    @Override
+    public long transformedHash(int symmetry){
+        return computeHash(Symmetry.transformBits(black, symmetry), Symmetry.transformBits(white, symmetry), currentPlayer);
+    }
+
+    @Override
+    public GameState transformed(int symmetry){
+        return new BitboardGameState(Symmetry.transformBits(black, symmetry), Symmetry.transformBits(white, symmetry), currentPlayer);
+    }
+
+    /**
+     * Returns the bit representing the given square.
+     */
+    static long bit(int col, int row){
+        return 1L << (col * SIZE + row);
+    }
+
+    /**
+     * Returns the squares where the player owning {@code own} can legally put a token.
+     *
+     * @param own The tokens of the player to move.
+     * @param opp The tokens of the opponent.
+     * @return A mask with one bit set per legal move.
+     */
+    static long moveMask(long own, long opp){
+        // Opponent tokens on the edges at the ends of a line can never be between, so they are left out
+        return (moves(own, opp & 0x7E7E7E7E7E7E7E7EL, 1)
+              | moves(own, opp & 0x00FFFFFFFFFFFF00L, 8)
+              | moves(own, opp & 0x007E7E7E7E7E7E00L, 7)
+              | moves(own, opp & 0x007E7E7E7E7E7E00L, 9)) & ~(own | opp);
+    }
+
+    /**
+     * Returns the squares next to (horizontally, vertically or diagonally) any of the given squares,
+     * possibly including some of the given squares themselves.
+     */
+    static long neighbours(long bits){
+        long up = (bits << 1) & NOT_ROW_0;
+        long down = (bits >>> 1) & NOT_ROW_7;
+        long column = bits | up | down;
+        return up | down | (column << 8) | (column >>> 8);
+    }
+
+    /**
+     * Returns the opponent tokens that are turned when a token is put on {@code move}.
+     *
+     * @param move The bit of the (empty) square the token is put on.
+     * @param own The tokens of the player to move.
+     * @param opp The tokens of the opponent.
+     * @return A mask of the captured tokens, or 0 if the move is not legal.
+     */
+    static long flips(long move, long own, long opp){
+        int offset = Long.numberOfTrailingZeros(move) * 8;
+        long notOpp = ~opp;
+        // Without branches, as whether a direction flips anything is hard to predict: the run of
+        // opponent tokens ends at the first other square on the ray, and is flipped if that is an
+        // own token. Towards higher bits that square is the lowest one, towards lower bits the highest.
+        return higherFlips(RAYS[offset], own, notOpp)
+             | higherFlips(RAYS[offset + 1], own, notOpp)
+             | higherFlips(RAYS[offset + 2], own, notOpp)
+             | higherFlips(RAYS[offset + 3], own, notOpp)
+             | lowerFlips(RAYS[offset + 4], own, notOpp)
+             | lowerFlips(RAYS[offset + 5], own, notOpp)
+             | lowerFlips(RAYS[offset + 6], own, notOpp)
+             | lowerFlips(RAYS[offset + 7], own, notOpp);
+    }
+
+    private static long higherFlips(long ray, long own, long notOpp){
+        long end = ray & notOpp;
+        end &= -end;
+        return ray & (end - 1) & ~(((end & own) - 1) >> 63);
+    }
+
+    private static long lowerFlips(long ray, long own, long notOpp){
+        long end = Long.highestOneBit(ray & notOpp);
+        return ray & -(end << 1) & ~(((end & own) - 1) >> 63);
+    }
+
+    // The squares after runs of the given opponent tokens next to own tokens, both ways along one
+    // direction. A run is at most 6 long on an 8x8 board: runs of 1 and 2 are found one step at a
+    // time, then twice two steps at a time along pairs of opponent tokens.
+    private static long moves(long own, long inner, int shift){
+        long up = inner & (own << shift);
+        long down = inner & (own >>> shift);
+        up |= inner & (up << shift);
+        down |= inner & (down >>> shift);
+        long pairsUp = inner & (inner << shift);
+        long pairsDown = pairsUp >>> shift;
+        up |= pairsUp & (up << 2 * shift);
+        down |= pairsDown & (down >>> 2 * shift);
+        up |= pairsUp & (up << 2 * shift);
+        down |= pairsDown & (down >>> 2 * shift);
+        return (up << shift) | (down >>> shift);
+    }
+}
@@ -0,0 +1,757 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Perfect solver for the last empty squares of a game. Instead of a heuristic evaluation it
+ * searches every line to the end of the game and scores positions by the final token difference,
+ * so its moves are provably optimal.
+ *
+ * On 8x8 boards it works directly on bitboards: moves are ordered fastest-first (fewest replies
+ * for the opponent) while many squares are empty, and by parity once few are: regions with an
+ * odd number of empty squares are played first, since the last move in such a region is likely
+ * to be ours. Positions with many empties are kept in a transposition table, whose best move is
+ * tried before the other moves are even ordered. Moves after the first are tried with a null
+ * window, and a search is cut short when the opponent's stable tokens already rule out beating
+ * alpha. The last few empties are searched without generating move lists at all, the very last
+ * one with precomputed flip counts. Other board sizes use the same ordering on any GameState
+ * through applyMove/undoMove, without those extras.
+ *
+ * A solve can take far longer than a heuristic search, so bestMove can be given a stop condition,
+ * which is checked every 1024 nodes.
+ */
+public class EndgameSolver {
+    private static final int SHALLOW_EMPTIES = 5;       // At most this many empties: loop over the empty squares directly
+    private static final int FASTEST_FIRST_EMPTIES = 6; // More empties than this: order moves by opponent mobility
+    private static final int TABLE_EMPTIES = 7;         // At least this many empties: use the transposition table
+    private static final int TABLE_BITS = 20;           // 2^20 entries of 19 bytes
+    private static final int MAX_SCORE = 64;
+    private static final long CORNERS = 0x8100000000000081L;
+
+    // The four quadrants of an 8x8 board, used to find regions with an odd number of empty squares
+    private static final long[] QUADRANTS = {
+        0x000000000F0F0F0FL, 0x00000000F0F0F0F0L, 0x0F0F0F0F00000000L, 0xF0F0F0F000000000L
+    };
+
+    // Per direction (rows, columns, and the two diagonals) the lines of squares along it, and the squares at its ends
+    private static final long[][] LINES = new long[4][];
+    private static final long[] LINE_ENDS = {0x8181818181818181L, 0xFF000000000000FFL, 0xFF818181818181FFL, 0xFF818181818181FFL};
+
+    // For the last empty square, where every other square holds a token: LAST_FLIPS[position * 256 + line]
+    // is the number of tokens flipped along a line of 8 squares by a move at the given position in
+    // it, the line holding the mover's tokens as set bits. DIAGONALS and ANTI_DIAGONALS are the
+    // diagonal lines through each square.
+    private static final int[] LAST_FLIPS = new int[8 * 256];
+    private static final long[] DIAGONALS = new long[64];
+    private static final long[] ANTI_DIAGONALS = new long[64];
+
+    static {
+        for (int direction = 0; direction < 4; direction++) {
+            int[][] steps = {{0, 1}, {1, 0}, {1, 1}, {1, -1}};
+            int dc = steps[direction][0];
+            int dr = steps[direction][1];
+            List<Long> lines = new ArrayList<Long>();
+            for (int col = 0; col < 8; col++) {
+                for (int row = 0; row < 8; row++) {
+                    int pc = col - dc;
+                    int pr = row - dr;
+                    if (pc >= 0 && pc < 8 && pr >= 0 && pr < 8) {
+                        continue; // Not the first square of a line
+                    }
+                    long line = 0;
+                    for (int c = col, r = row; c >= 0 && c < 8 && r >= 0 && r < 8; c += dc, r += dr) {
+                        line |= BitboardGameState.bit(c, r);
+                    }
+                    if (Long.bitCount(line) > 1) {
+                        lines.add(line);
+                    }
+                }
+            }
+            LINES[direction] = new long[lines.size()];
+            for (int i = 0; i < lines.size(); i++) {
+                LINES[direction][i] = lines.get(i);
+            }
+        }
+        for (int position = 0; position < 8; position++) {
+            for (int line = 0; line < 256; line++) {
+                int flips = 0;
+                for (int step = -1; step <= 1; step += 2) {
+                    int i = position + step;
+                    while (i >= 0 && i < 8 && (line >>> i & 1) == 0) {
+                        i += step;
+                    }
+                    if (i >= 0 && i < 8) {
+                        flips += Math.abs(i - position) - 1;
+                    }
+                }
+                LAST_FLIPS[position * 256 + line] = flips;
+            }
+        }
+        for (int square = 0; square < 64; square++) {
+            int col = square >>> 3;
+            int row = square & 7;
+            for (int c = 0; c < 8; c++) {
+                int r = row + c - col;
+                if (r >= 0 && r < 8) {
+                    DIAGONALS[square] |= BitboardGameState.bit(c, r);
+                }
+                r = row - c + col;
+                if (r >= 0 && r < 8) {
+                    ANTI_DIAGONALS[square] |= BitboardGameState.bit(c, r);
+                }
+            }
+        }
+    }
+
+    private final int size;
+    private final int[][] moveBuffers;   // Ordered moves per number of empties (a pass keeps the count, but uses no moves)
+    private final long[][] flipBuffers;  // The flips belonging to each move in moveBuffers
+    private final int[][] scoreBuffers;  // Ordering scores belonging to each move in moveBuffers
+    private long nodes;
+    private BooleanSupplier stop = () -> false; // Checked while bestMove runs
+    private boolean stopped;                    // Set once stop held; the search then unwinds without results
+
+    // Transposition table for the bitboard search: the position as two bitboards, bounds on its value and the best move
+    private long[] tableOwn;
+    private long[] tableOpp;
+    private byte[] tableLower;
+    private byte[] tableUpper;
+    private byte[] tableMove;
+
+    /**
+     * Creates a solver for boards of the given size.
+     *
+     * @param size The number of columns (and rows) of the board.
+     */
+    public EndgameSolver(int size){
+        this.size = size;
+        int squares = size * size;
+        this.moveBuffers = new int[squares + 1][squares];
+        this.flipBuffers = new long[squares + 1][squares];
+        this.scoreBuffers = new int[squares + 1][squares];
+        if (size == BitboardGameState.SIZE) {
+            tableOwn = new long[1 << TABLE_BITS];
+            tableOpp = new long[1 << TABLE_BITS];
+            tableLower = new byte[1 << TABLE_BITS];
+            tableUpper = new byte[1 << TABLE_BITS];
+            tableMove = new byte[1 << TABLE_BITS];
+        }
+    }
+
+    /**
+     * Returns the number of positions visited since the solver was created.
+     */
+    public long getNodeCount(){
+        return nodes;
+    }
+
+    /**
+     * Computes the final token difference (own minus opponent's) for the player in turn when both
+     * sides play perfectly from the given position.
+     *
+     * @param s The position; it is not changed.
+     * @return The token difference at the end of the game from the view of the player in turn.
+     */
+    public int solve(GameState s){
+        stopped = false;
+        if (size == BitboardGameState.SIZE) {
+            BitboardGameState b = toBitboard(s);
+            int player = b.getPlayerInTurn();
+            long own = b.tokens(player);
+            long opp = b.tokens(player == 1 ? 2 : 1);
+            return search(own, opp, -MAX_SCORE, MAX_SCORE, Long.bitCount(~(own | opp)));
+        }
+        return search(s.copy(), -Integer.MAX_VALUE, Integer.MAX_VALUE, emptySquares(s));
+    }
+
+    /**
+     * Returns a move that gives the best final token difference for the player in turn. On 8x8 the
+     * moves are tried in the solver's own order (see solveRoot), otherwise in the given order; the
+     * first of equally good ones is kept.
+     *
+     * @param s The position; it is not changed.
+     * @param moves The legal moves of the player in turn, as square indices.
+     * @param count The number of moves; must be at least 1.
+     * @return The best move as a square index.
+     */
+    public int bestMove(GameState s, int[] moves, int count){
+        return bestMove(s, moves, count, () -> false);
+    }
+
+    /**
+     * Same as bestMove(GameState, int[], int), but gives up as soon as the given condition holds,
+     * e.g. when the time for the move is up.
+     *
+     * @param stop Checked every 1024 nodes, on the thread of the search.
+     * @return The best move as a square index, or -1 if the search was stopped before it finished.
+     */
+    public int bestMove(GameState s, int[] moves, int count, BooleanSupplier stop){
+        this.stop = stop;
+        this.stopped = false;
+        try {
+            return solveMoves(s, moves, count);
+        } finally {
+            this.stop = () -> false;
+        }
+    }
+
+    private int solveMoves(GameState s, int[] moves, int count){
+        if (size == BitboardGameState.SIZE) {
+            BitboardGameState b = toBitboard(s);
+            int player = b.getPlayerInTurn();
+            long own = b.tokens(player);
+            long opp = b.tokens(player == 1 ? 2 : 1);
+            return solveRoot(own, opp, moves, count);
+        }
+        int best = moves[0];
+        int alpha = -Integer.MAX_VALUE;
+        GameState state = s.copy();
+        int empties = emptySquares(s) - 1;
+        for (int i = 0; i < count; i++) {
+            state.applyMove(moves[i]);
+            int value = -search(state, -Integer.MAX_VALUE, -alpha, empties);
+            state.undoMove();
+            if (stopped) {
+                return -1;
+            }
+            if (value > alpha) {
+                alpha = value;
+                best = moves[i];
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Finds the best move on bitboards. The moves are ordered as in search: the best move of an
+     * earlier solve of this position first, then fastest-first. When the transposition table holds
+     * bounds on the value from an earlier solve (as when the solver is asked for every move of a
+     * game), the first move is searched in their window, which, being proven, never has to be
+     * widened again; an exact value makes that a probe with a window of one above and below it.
+     * The other moves only have to be proved no better with a null window.
+     *
+     * @return The best move as a square index, or -1 if the search was stopped.
+     */
+    private int solveRoot(long own, long opp, int[] moves, int count){
+        int empties = Long.bitCount(~(own | opp));
+        int index = tableIndex(own, opp);
+        boolean known = tableOwn[index] == own && tableOpp[index] == opp;
+        int hashMove = known ? tableMove[index] : -1;
+        int[] order = moveBuffers[empties];
+        long[] flips = flipBuffers[empties];
+        int[] scores = scoreBuffers[empties];
+        long empty = ~(own | opp);
+        for (int i = 0; i < count; i++) {
+            long move = 1L << moves[i];
+            order[i] = moves[i];
+            flips[i] = BitboardGameState.flips(move, own, opp);
+            scores[i] = moves[i] == hashMove ? Integer.MIN_VALUE : fastestFirst(own | move | flips[i], opp & ~flips[i], empty & ~move);
+        }
+
+        int alpha = known ? tableLower[index] - 1 : -MAX_SCORE - 1;
+        int beta = known ? tableUpper[index] + 1 : MAX_SCORE + 1;
+        int alphaOriginal = alpha;
+        int best = moves[0];
+        for (int i = 0; i < count; i++) {
+            selectBest(order, flips, scores, i, count);
+            long move = 1L << order[i];
+            long newOwn = opp & ~flips[i];
+            long newOpp = own | move | flips[i];
+            int value;
+            if (i == 0) {
+                value = -search(newOwn, newOpp, -beta, -alpha, empties - 1);
+            } else {
+                // Only a move that beats the best so far matters, so first test that with a null window
+                value = -search(newOwn, newOpp, -alpha - 1, -alpha, empties - 1);
+                if (value > alpha) {
+                    value = -search(newOwn, newOpp, -beta, -alpha, empties - 1);
+                }
+            }
+            if (stopped) {
+                return -1;
+            }
+            if (value > alpha) {
+                alpha = value;
+                best = order[i];
+            }
+        }
+        if (alpha > alphaOriginal) { // Exact, so it can be reused by a later solve, e.g. after pondering
+            tableOwn[index] = own;
+            tableOpp[index] = opp;
+            tableLower[index] = (byte) alpha;
+            tableUpper[index] = (byte) alpha;
+            tableMove[index] = (byte) best;
+        }
+        return best;
+    }
+
+    private int emptySquares(GameState s){
+        return size * size - s.countTokens(1) - s.countTokens(2);
+    }
+
+    /**
+     * Counts a visited node and checks every 1024 nodes whether the search must stop.
+     *
+     * @return Whether the search has been stopped, so its values are meaningless.
+     */
+    private boolean countNode(){
+        if ((++nodes & 1023) == 0 && !stopped && stop.getAsBoolean()) {
+            stopped = true;
+        }
+        return stopped;
+    }
+
+    private static BitboardGameState toBitboard(GameState s){
+        if (s instanceof BitboardGameState) {
+            return (BitboardGameState) s;
+        }
+        return new BitboardGameState(s.getBoard(), s.getPlayerInTurn());
+    }
+
+    //************ 8x8 bitboards ****************//
+
+    /**
+     * Negamax alpha-beta search to the end of the game on bitboards. After the first move the others
+     * are tested with a null window and only searched fully if they turn out to be better.
+     *
+     * @param own The tokens of the player in turn.
+     * @param opp The tokens of the opponent.
+     * @param empties The number of empty squares.
+     * @return The final token difference from the view of the player in turn (fail-soft).
+     */
+    private int search(long own, long opp, int alpha, int beta, int empties){
+        if (empties <= SHALLOW_EMPTIES) {
+            return searchShallow(own, opp, alpha, beta, empties, false);
+        }
+        if (countNode()) {
+            return 0;
+        }
+        long moveMask = BitboardGameState.moveMask(own, opp);
+        if (moveMask == 0) {
+            if (BitboardGameState.moveMask(opp, own) == 0) {
+                return Long.bitCount(own) - Long.bitCount(opp);
+            }
+            return -search(opp, own, -beta, -alpha, empties);
+        }
+
+        // Stability cutoff: tokens of the opponent that can never be flipped bound the best possible result
+        if (alpha >= MAX_SCORE - 2 * Long.bitCount(opp)) {
+            int highest = MAX_SCORE - 2 * Long.bitCount(stable(opp, own | opp));
+            if (highest <= alpha) {
+                return highest;
+            }
+        }
+
+        int index = -1;
+        int hashMove = -1;
+        if (empties >= TABLE_EMPTIES) {
+            index = tableIndex(own, opp);
+            if (tableOwn[index] == own && tableOpp[index] == opp) {
+                int lower = tableLower[index];
+                int upper = tableUpper[index];
+                if (lower >= beta || lower == upper) {
+                    return lower;
+                }
+                if (upper <= alpha) {
+                    return upper;
+                }
+                alpha = Math.max(alpha, lower);
+                beta = Math.min(beta, upper);
+                hashMove = tableMove[index];
+            }
+        }
+        int alphaOriginal = alpha;
+
+        int best = -MAX_SCORE - 1;
+        int bestMove = -1;
+        if (hashMove >= 0) {
+            // The best move of an earlier search here mostly cuts off again, so it goes before the others are ordered
+            long move = 1L << hashMove;
+            long flipped = BitboardGameState.flips(move, own, opp);
+            best = -search(opp & ~flipped, own | move | flipped, -beta, -alpha, empties - 1);
+            if (stopped) {
+                return 0;
+            }
+            bestMove = hashMove;
+            moveMask = best < beta ? moveMask & ~move : 0;
+        }
+
+        int[] moves = moveBuffers[empties];
+        long[] flips = flipBuffers[empties];
+        int[] scores = scoreBuffers[empties];
+        int count = 0;
+        long empty = ~(own | opp);
+        for (long m = moveMask; m != 0; m &= m - 1) {
+            int square = Long.numberOfTrailingZeros(m);
+            long move = 1L << square;
+            moves[count] = square;
+            if (empties <= FASTEST_FIRST_EMPTIES) {
+                // Parity order only; the flips are found when the move is played, as most nodes here cut off at once
+                flips[count] = 0;
+                scores[count] = isOddRegion(empty, move) ? 0 : 1;
+                count++;
+                continue;
+            }
+            long flipped = BitboardGameState.flips(move, own, opp);
+            flips[count] = flipped;
+            if (empties > TABLE_EMPTIES) {
+                // Enhanced transposition cutoff: a reply already known to fail high here needs no search
+                int child = tableIndex(opp & ~flipped, own | move | flipped);
+                if (tableOwn[child] == (opp & ~flipped) && tableOpp[child] == (own | move | flipped)
+                        && -tableUpper[child] >= beta) {
+                    return -tableUpper[child];
+                }
+            }
+            scores[count] = fastestFirst(own | move | flipped, opp & ~flipped, empty & ~move);
+            count++;
+        }
+
+        for (int i = 0; i < count; i++) {
+            selectBest(moves, flips, scores, i, count);
+            long move = 1L << moves[i];
+            if (flips[i] == 0) {
+                flips[i] = BitboardGameState.flips(move, own, opp);
+            }
+            long newOwn = opp & ~flips[i];
+            long newOpp = own | move | flips[i];
+            int bound = Math.max(alpha, best);
+            int value;
+            if (bestMove < 0) {
+                value = -search(newOwn, newOpp, -beta, -bound, empties - 1);
+            } else {
+                value = -search(newOwn, newOpp, -bound - 1, -bound, empties - 1);
+                if (value > bound && value < beta) {
+                    value = -search(newOwn, newOpp, -beta, -value, empties - 1);
+                }
+            }
+            if (stopped) {
+                return 0; // Nothing is stored, as the value is not known
+            }
+            if (value > best) {
+                best = value;
+                bestMove = moves[i];
+                if (best >= beta) {
+                    break;
+                }
+            }
+        }
+
+        if (index >= 0) {
+            tableOwn[index] = own;
+            tableOpp[index] = opp;
+            tableLower[index] = (byte) (best > alphaOriginal ? best : -MAX_SCORE);
+            tableUpper[index] = (byte) (best < beta ? best : MAX_SCORE);
+            tableMove[index] = (byte) bestMove;
+        }
+        return best;
+    }
+
+    /**
+     * Fastest-first ordering score of a move, lower is better: mainly the replies left to the
+     * opponent, corners counting double. Ties are broken by the mover's tokens that are stable next
+     * to a corner, and then by the empty squares next to the mover's tokens, where replies may
+     * appear later.
+     *
+     * @param own The tokens of the player who moved, after the move.
+     * @param opp The tokens of the opponent, after the move.
+     * @param empty The empty squares after the move.
+     */
+    private static int fastestFirst(long own, long opp, long empty){
+        long replies = BitboardGameState.moveMask(opp, own);
+        return ((Long.bitCount(replies) + Long.bitCount(replies & CORNERS)) << 4)
+                - (cornerStability(own) << 2)
+                + Long.bitCount(neighbours(own) & empty);
+    }
+
+    /**
+     * Counts the given tokens in corners and on the edge squares next to a corner holding one of
+     * them: a part of the stable tokens that is cheap to find.
+     */
+    private static int cornerStability(long tokens){
+        long stable = ((tokens & 0x0100000000000001L) << 1 | (tokens & 0x8000000000000080L) >>> 1
+                | (tokens & 0x0000000000000081L) << 8 | (tokens & 0x8100000000000000L) >>> 8 | CORNERS) & tokens;
+        return Long.bitCount(stable);
+    }
+
+    private static int tableIndex(long own, long opp){
+        long h = own * 0x9E3779B97F4A7C15L ^ opp * 0xC2B2AE3D27D4EB4FL;
+        return (int) (h >>> (64 - TABLE_BITS));
+    }
+
+    /**
+     * Search for the last few empty squares. Instead of generating a move mask, every empty square
+     * next to an opponent token is tried directly, those in odd regions first. The last two empty
+     * squares are resolved by lastTwo and lastEmpty.
+     *
+     * @param passed Whether the opponent just passed, so a pass here ends the game.
+     */
+    private int searchShallow(long own, long opp, int alpha, int beta, int empties, boolean passed){
+        long empty = ~(own | opp);
+        if (empties <= 2) {
+            if (empties == 2) {
+                return lastTwo(own, opp, alpha, beta, empty, false);
+            }
+            return empties == 1 ? lastEmpty(own, opp, empty) : Long.bitCount(own) - Long.bitCount(opp);
+        }
+        nodes++;
+
+        long odd = 0;
+        if (empties > 3) { // With three empty squares parity hardly matters
+            for (long quadrant : QUADRANTS) {
+                if ((Long.bitCount(empty & quadrant) & 1) != 0) {
+                    odd |= quadrant;
+                }
+            }
+        }
+        long reachable = empty & neighbours(opp); // A move must be next to an opponent token
+        int best = -Integer.MAX_VALUE;
+        boolean moved = false;
+        for (int pass = 0; pass < 2; pass++) {
+            long candidates = reachable & (pass == 0 ? odd : ~odd);
+            for (; candidates != 0; candidates &= candidates - 1) {
+                long move = Long.lowestOneBit(candidates);
+                long flipped = BitboardGameState.flips(move, own, opp);
+                if (flipped == 0) {
+                    continue;
+                }
+                moved = true;
+                int value = -searchShallow(opp & ~flipped, own | move | flipped, -beta, -Math.max(alpha, best), empties - 1, false);
+                if (value > best) {
+                    best = value;
+                    if (best >= beta) {
+                        return best;
+                    }
+                }
+            }
+        }
+        if (moved) {
+            return best;
+        }
+        if (passed) {
+            return Long.bitCount(own) - Long.bitCount(opp);
+        }
+        return -searchShallow(opp, own, -beta, -alpha, empties, true);
+    }
+
+    /**
+     * Resolves a position with exactly two empty squares by trying both for the player in turn,
+     * or for the opponent if the player has to pass.
+     */
+    private int lastTwo(long own, long opp, int alpha, int beta, long empty, boolean passed){
+        nodes++;
+        long first = Long.lowestOneBit(empty);
+        long second = empty ^ first;
+        int best = -Integer.MAX_VALUE;
+        long flipped = BitboardGameState.flips(first, own, opp);
+        if (flipped != 0) {
+            best = -lastEmpty(opp & ~flipped, own | first | flipped, second);
+            if (best >= beta) {
+                return best;
+            }
+        }
+        flipped = BitboardGameState.flips(second, own, opp);
+        if (flipped != 0) {
+            best = Math.max(best, -lastEmpty(opp & ~flipped, own | second | flipped, first));
+        }
+        if (best != -Integer.MAX_VALUE) {
+            return best;
+        }
+        if (passed) {
+            return Long.bitCount(own) - Long.bitCount(opp);
+        }
+        return -lastTwo(opp, own, -beta, -alpha, empty, true);
+    }
+
+    /**
+     * Resolves a position with exactly one empty square: the player in turn takes it if they can,
+     * otherwise the opponent does if they can, otherwise it stays empty.
+     */
+    private int lastEmpty(long own, long opp, long empty){
+        nodes++;
+        // As every other square is filled, the result follows from the own tokens and the flips
+        int square = Long.numberOfTrailingZeros(empty);
+        int tokens = Long.bitCount(own);
+        int flips = lastFlips(square, own);
+        if (flips != 0) {
+            return 2 * (tokens + flips) - 62;
+        }
+        flips = lastFlips(square, opp);
+        if (flips != 0) {
+            return 2 * (tokens - flips) - 64;
+        }
+        return 2 * tokens - 63;
+    }
+
+    /**
+     * Counts the tokens flipped by a move on the given square, which must be the only empty one.
+     *
+     * @param tokens The tokens of the player making the move; every other filled square is the opponent's.
+     */
+    private static int lastFlips(int square, long tokens){
+        int col = square >>> 3;
+        int row = square & 7;
+        // Each line is gathered into a byte: a column is one already, a row, diagonal or anti-diagonal
+        // is moved into the top byte by a multiplication (a row in reverse order of columns)
+        int column = (int) (tokens >>> (col * 8)) & 0xFF;
+        int rowLine = (int) ((((tokens >>> row) & 0x0101010101010101L) * 0x8040201008040201L) >>> 56);
+        int diagonal = (int) (((tokens & DIAGONALS[square]) * 0x0101010101010101L) >>> 56);
+        int antiDiagonal = (int) (((tokens & ANTI_DIAGONALS[square]) * 0x0101010101010101L) >>> 56);
+        return LAST_FLIPS[row * 256 + column]
+             + LAST_FLIPS[(7 - col) * 256 + rowLine]
+             + LAST_FLIPS[row * 256 + diagonal]
+             + LAST_FLIPS[row * 256 + antiDiagonal];
+    }
+
+    /**
+     * Returns tokens that can never be flipped again: along each of the four directions they are
+     * in a full line, at the edge of the board, or next to another such token.
+     *
+     * @param tokens The tokens of one player.
+     * @param filled All occupied squares.
+     */
+    private static long stable(long tokens, long filled){
+        long rows = fullLines(filled, 0);
+        long cols = fullLines(filled, 1);
+        long diagonals = fullLines(filled, 2);
+        long antiDiagonals = fullLines(filled, 3);
+        long stable = 0;
+        while (true) {
+            long next = tokens
+                    & (rows | ((stable << 1) & 0xFEFEFEFEFEFEFEFEL) | ((stable >>> 1) & 0x7F7F7F7F7F7F7F7FL))
+                    & (cols | (stable << 8) | (stable >>> 8))
+                    & (diagonals | ((stable << 9) & 0xFEFEFEFEFEFEFEFEL) | ((stable >>> 9) & 0x7F7F7F7F7F7F7F7FL))
+                    & (antiDiagonals | ((stable << 7) & 0x7F7F7F7F7F7F7F7FL) | ((stable >>> 7) & 0xFEFEFEFEFEFEFEFEL));
+            if (next == stable) {
+                return stable;
+            }
+            stable = next;
+        }
+    }
+
+    /**
+     * Returns the squares of the completely filled lines in the given direction, plus the squares at the ends of all lines.
+     */
+    private static long fullLines(long filled, int direction){
+        long full = LINE_ENDS[direction];
+        for (long line : LINES[direction]) {
+            if ((filled & line) == line) {
+                full |= line;
+            }
+        }
+        return full;
+    }
+
+    /**
+     * Returns the squares adjacent to any of the given squares.
+     */
+    private static long neighbours(long squares){
+        long rows = ((squares << 1) & 0xFEFEFEFEFEFEFEFEL) | ((squares >>> 1) & 0x7F7F7F7F7F7F7F7FL);
+        long band = squares | rows;
+        return rows | (band << 8) | (band >>> 8);
+    }
+
+    private static boolean isOddRegion(long empty, long move){
+        for (long quadrant : QUADRANTS) {
+            if ((quadrant & move) != 0) {
+                return (Long.bitCount(empty & quadrant) & 1) != 0;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Moves the entry with the lowest score among positions from..count-1 to position from.
+     */
+    private static void selectBest(int[] moves, long[] flips, int[] scores, int from, int count){
+        int best = from;
+        for (int i = from + 1; i < count; i++) {
+            if (scores[i] < scores[best]) {
+                best = i;
+            }
+        }
+        if (best != from) {
+            int move = moves[best]; moves[best] = moves[from]; moves[from] = move;
+            long flipped = flips[best]; flips[best] = flips[from]; flips[from] = flipped;
+            int score = scores[best]; scores[best] = scores[from]; scores[from] = score;
+        }
+    }
+
+    //************ Any board size ****************//
+
+    /**
+     * Negamax alpha-beta search to the end of the game on any GameState, with the same move
+     * ordering as the bitboard search. The state is changed during the search but restored.
+     */
+    private int search(GameState s, int alpha, int beta, int empties){
+        if (countNode()) {
+            return 0;
+        }
+        int player = s.getPlayerInTurn();
+        int opponent = player == 1 ? 2 : 1;
+        int[] moves = moveBuffers[empties];
+        int count = s.legalMoves(moves);
+        if (count == 0) {
+            if (!s.hasLegalMove(opponent)) {
+                return s.countTokens(player) - s.countTokens(opponent);
+            }
+            s.applyPass();
+            int value = -search(s, -beta, -alpha, empties);
+            s.undoMove();
+            return value;
+        }
+
+        int[] scores = scoreBuffers[empties];
+        long[] unused = flipBuffers[empties];
+        if (count > 1) {
+            int[] regionEmpties = empties > FASTEST_FIRST_EMPTIES ? null : countRegionEmpties(s);
+            int[] replies = moveBuffers[0];
+            for (int i = 0; i < count; i++) {
+                if (regionEmpties == null) {
+                    s.applyMove(moves[i]);
+                    scores[i] = s.legalMoves(replies);
+                    s.undoMove();
+                } else {
+                    scores[i] = (regionEmpties[region(moves[i])] & 1) != 0 ? 0 : 1;
+                }
+            }
+        }
+
+        int best = -Integer.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            if (count > 1) {
+                selectBest(moves, unused, scores, i, count);
+            }
+            s.applyMove(moves[i]);
+            int value = -search(s, -beta, -Math.max(alpha, best), empties - 1);
+            s.undoMove();
+            if (stopped) {
+                return 0;
+            }
+            if (value > best) {
+                best = value;
+                if (best >= beta) {
+                    break;
+                }
+            }
+        }
+        return best;
+    }
+
+    private int region(int square){
+        int half = size / 2;
+        return (square / size >= half ? 2 : 0) + (square % size >= half ? 1 : 0);
+    }
+
+    private int[] countRegionEmpties(GameState s){
+        int[] counts = new int[4];
+        int[][] board = s.getBoard();
+        for (int col = 0; col < size; col++) {
+            for (int row = 0; row < size; row++) {
+                if (board[col][row] == 0) {
+                    counts[region(col * size + row)]++;
+                }
+            }
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,102 @@
+import java.util.Arrays;
+
+/**
+ * One game as it is written by GameRecordWriter: the board size, who played black and white, every
+ * ply from the standard starting position with black to move (a square index, or GameState.PASS),
+ * how long the player thought about each, and the final score. Moves are added as they are played.
+ */
+public class GameRecord {
+    private final int size;
+    private final String black;
+    private final String white;
+    private int[] moves = new int[64];
+    private int[] thinkMicros = new int[64];
+    private int plies;
+    private int blackTokens;
+    private int whiteTokens;
+
+    /**
+     * Starts the record of a game.
+     *
+     * @param size The board size.
+     * @param black The identifier of the player of black, e.g. the AI's class name.
+     * @param white The identifier of the player of white.
+     */
+    public GameRecord(int size, String black, String white) {
+        this.size = size;
+        this.black = black;
+        this.white = white;
+    }
+
+    /**
+     * Adds the next ply.
+     *
+     * @param square The square played (see GameState.toSquare), or GameState.PASS.
+     * @param thinkNanos How long the player took to choose it, in nanoseconds; 0 if not measured.
+     */
+    public void addMove(int square, long thinkNanos) {
+        if (plies == moves.length) {
+            moves = Arrays.copyOf(moves, plies * 2);
+            thinkMicros = Arrays.copyOf(thinkMicros, plies * 2);
+        }
+        moves[plies] = square;
+        thinkMicros[plies] = (int) Math.min(Integer.MAX_VALUE, thinkNanos / 1000);
+        plies++;
+    }
+
+    /**
+     * Adds a pass as the next ply.
+     */
+    public void addPass() {
+        addMove(GameState.PASS, 0);
+    }
+
+    /**
+     * Sets the final score from the finished game.
+     */
+    public void setScore(GameState finalState) {
+        blackTokens = finalState.countTokens(1);
+        whiteTokens = finalState.countTokens(2);
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public String getBlack() {
+        return black;
+    }
+
+    public String getWhite() {
+        return white;
+    }
+
+    /**
+     * Returns the number of plies, passes included.
+     */
+    public int getPlies() {
+        return plies;
+    }
+
+    /**
+     * Returns the square played at the given ply, or GameState.PASS.
+     */
+    public int getMove(int ply) {
+        return moves[ply];
+    }
+
+    /**
+     * Returns how long the player thought about the given ply, in microseconds.
+     */
+    public int getThinkMicros(int ply) {
+        return thinkMicros[ply];
+    }
+
+    public int getBlackTokens() {
+        return blackTokens;
+    }
+
+    public int getWhiteTokens() {
+        return whiteTokens;
+    }
+}
@@ -0,0 +1,237 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Reads the games of a game record file written by GameRecordWriter, in the order they were written.
+ *
+ * The reader is a cursor: next moves it to the following game, and the getters read that game's
+ * fields straight from a read-only memory mapping of the file, so iterating over millions of games
+ * allocates nothing (except for the identifiers, which are only decoded when asked for). Large files
+ * are mapped a window at a time. A game cut short at the end of the file is treated as the end.
+ *
+ * Usage: java GameRecordReader file
+ * prints the results and think times of every player in the file.
+ */
+public class GameRecordReader implements Closeable {
+    private static final long WINDOW_BYTES = 1 << 30;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final long fileSize;
+    private MappedByteBuffer window;
+    private long windowStart;          // The file offset of the start of window
+    private long end;                  // The file offset just after the current game
+
+    // The current game, as offsets into window
+    private int size;
+    private int blackAt;
+    private int whiteAt;
+    private int scoreAt;
+    private int plies;
+    private int movesAt;
+    private int timesAt;
+    private int moveBytes;
+
+    private GameRecordReader(Path file, FileChannel channel) throws IOException {
+        this.file = file;
+        this.channel = channel;
+        this.fileSize = channel.size();
+        if (fileSize < GameRecordWriter.HEADER_BYTES) {
+            throw new IllegalArgumentException(file + " is not a game record file");
+        }
+        map(0, GameRecordWriter.HEADER_BYTES);
+        if (window.getInt(0) != GameRecordWriter.MAGIC) {
+            throw new IllegalArgumentException(file + " is not a game record file");
+        }
+        this.end = GameRecordWriter.HEADER_BYTES;
+    }
+
+    /**
+     * Opens a game record file. It is positioned before the first game.
+     *
+     * @throws IOException If the file cannot be read.
+     * @throws IllegalArgumentException If the file is not a game record file.
+     */
+    public static GameRecordReader open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            return new GameRecordReader(file, channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Moves to the next game.
+     *
+     * @return false at the end of the file, or if the rest of it is an incomplete game.
+     * @throws IOException If the file cannot be read.
+     * @throws IllegalArgumentException If the game is corrupt.
+     */
+    public boolean next() throws IOException {
+        long start = end;
+        if (fileSize - start < 4) {
+            return false;
+        }
+        if (start + 4 > windowStart + window.capacity()) {
+            map(start, 4);
+        }
+        long length = window.getInt((int) (start - windowStart)) & 0xFFFFFFFFL;
+        if (fileSize - start - 4 < length) {
+            return false;
+        }
+        if (length > Integer.MAX_VALUE - 4) {
+            throw new IllegalArgumentException(file + " has a corrupt game at offset " + start);
+        }
+        if (start + 4 + length > windowStart + window.capacity()) {
+            map(start, 4 + length);
+        }
+        int at = (int) (start - windowStart) + 4;
+        int last = at + (int) length;
+        size = window.get(at) & 0xFF;
+        blackAt = at + 1;
+        whiteAt = blackAt + 1 + (window.get(blackAt) & 0xFF);
+        scoreAt = whiteAt + 1 + (window.get(whiteAt) & 0xFF);
+        if (scoreAt + 6 > last) {
+            throw new IllegalArgumentException(file + " has a corrupt game at offset " + start);
+        }
+        plies = window.getShort(scoreAt + 4) & 0xFFFF;
+        moveBytes = GameRecordWriter.moveBytes(size);
+        movesAt = scoreAt + 6;
+        timesAt = movesAt + plies * moveBytes;
+        if (timesAt + 4 * plies != last) {
+            throw new IllegalArgumentException(file + " has a corrupt game at offset " + start);
+        }
+        end = start + 4 + length;
+        return true;
+    }
+
+    /**
+     * Maps the part of the file from the given offset, at least the given number of bytes and at
+     * most WINDOW_BYTES unless more are needed, up to the end of the file.
+     */
+    private void map(long start, long bytes) throws IOException {
+        long length = Math.min(fileSize - start, Math.max(bytes, WINDOW_BYTES));
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+        windowStart = start;
+    }
+
+    /**
+     * Returns the file offset just after the current game, or after the header before the first game.
+     */
+    long getEnd() {
+        return end;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the identifier of the player of black.
+     */
+    public String getBlack() {
+        return name(blackAt);
+    }
+
+    /**
+     * Returns the identifier of the player of white.
+     */
+    public String getWhite() {
+        return name(whiteAt);
+    }
+
+    private String name(int at) {
+        byte[] bytes = new byte[window.get(at) & 0xFF];
+        window.get(at + 1, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public int getBlackTokens() {
+        return window.getShort(scoreAt) & 0xFFFF;
+    }
+
+    public int getWhiteTokens() {
+        return window.getShort(scoreAt + 2) & 0xFFFF;
+    }
+
+    /**
+     * Returns the number of plies, passes included.
+     */
+    public int getPlies() {
+        return plies;
+    }
+
+    /**
+     * Returns the square played at the given ply, or GameState.PASS.
+     */
+    public int getMove(int ply) {
+        int move;
+        if (moveBytes == 1) {
+            move = window.get(movesAt + ply) & 0xFF;
+            return move == 0xFF ? GameState.PASS : move;
+        }
+        move = window.getShort(movesAt + 2 * ply) & 0xFFFF;
+        return move == 0xFFFF ? GameState.PASS : move;
+    }
+
+    /**
+     * Returns how long the player thought about the given ply, in microseconds.
+     */
+    public int getThinkMicros(int ply) {
+        return window.getInt(timesAt + 4 * ply);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: java GameRecordReader file");
+            System.exit(1);
+        }
+        // Per player: games, wins, draws, losses, moves and think time in microseconds
+        Map<String, long[]> players = new TreeMap<String, long[]>();
+        long games = 0;
+        long plies = 0;
+        long start = System.nanoTime();
+        try (GameRecordReader reader = open(Paths.get(args[0]))) {
+            while (reader.next()) {
+                games++;
+                plies += reader.getPlies();
+                int difference = reader.getBlackTokens() - reader.getWhiteTokens();
+                long[] black = players.computeIfAbsent(reader.getBlack(), k -> new long[6]);
+                long[] white = players.computeIfAbsent(reader.getWhite(), k -> new long[6]);
+                black[0]++;
+                white[0]++;
+                black[2 - Integer.signum(difference)]++;
+                white[2 + Integer.signum(difference)]++;
+                for (int ply = 0; ply < reader.getPlies(); ply++) {
+                    if (reader.getMove(ply) != GameState.PASS) {
+                        long[] player = ply % 2 == 0 ? black : white; // Passes are plies, so black has the even ones
+                        player[4]++;
+                        player[5] += reader.getThinkMicros(ply);
+                    }
+                }
+            }
+        }
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        System.out.printf("%,d games, %,d plies, read in %d ms%n", games, plies, millis);
+        for (Map.Entry<String, long[]> entry : players.entrySet()) {
+            long[] p = entry.getValue();
+            System.out.printf("  %s: %d games, W/D/L %d/%d/%d, %d moves, %.2f ms per move%n", entry.getKey(),
+                    p[0], p[1], p[2], p[3], p[4], p[4] == 0 ? 0 : p[5] / 1000.0 / p[4]);
+        }
+    }
+}
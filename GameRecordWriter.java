@@ -0,0 +1,135 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Appends games to a game record file, to be read by GameRecordReader.
+ *
+ * The file is a 4 byte magic number followed by the games, each of them
+ *   int    the number of bytes of the game after this field
+ *   byte   the board size
+ *   byte   the length of the identifier of black, then the identifier in UTF-8
+ *   byte   the length of the identifier of white, then the identifier in UTF-8
+ *   short  the tokens of black at the end, then those of white
+ *   short  the number of plies
+ *   the square of every ply: one byte (255 for a pass) on boards of fewer than 255 squares, two
+ *          bytes (65535 for a pass) on larger boards
+ *   int    the think time of every ply, in microseconds
+ * all big-endian. Games are only ever appended, one at a time even from several threads. A game cut
+ * short by a crash is ignored by the reader, and removed when the file is opened for writing again.
+ */
+public class GameRecordWriter implements Closeable {
+    static final int MAGIC = 0x4F475231; // "OGR1"
+    static final int HEADER_BYTES = 4;
+    static final int MAX_SIZE = 255;     // Board sizes fit in a byte, and squares and passes in two
+    static final int MAX_NAME = 255;     // Bytes of an identifier
+
+    private final FileChannel channel;
+    private ByteBuffer buffer = ByteBuffer.allocate(1024);
+
+    private GameRecordWriter(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Opens a game record file for appending, creating it if it does not exist.
+     *
+     * @throws IOException If the file cannot be written.
+     * @throws IllegalArgumentException If the file exists but is not a game record file.
+     */
+    public static GameRecordWriter open(Path file) throws IOException {
+        if (Files.exists(file) && Files.size(file) > 0) {
+            long end;
+            try (GameRecordReader reader = GameRecordReader.open(file)) {
+                while (reader.next()) {
+                    // Find the end of the last complete game
+                }
+                end = reader.getEnd();
+            }
+            if (end < Files.size(file)) {
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                    channel.truncate(end);
+                }
+            }
+        }
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        if (channel.size() == 0) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC);
+            header.flip();
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+        }
+        return new GameRecordWriter(channel);
+    }
+
+    /**
+     * Appends a game. Safe to call from several threads.
+     *
+     * @throws IOException If the file cannot be written.
+     * @throws IllegalArgumentException If the board is larger than MAX_SIZE or an identifier is longer than MAX_NAME bytes.
+     */
+    public synchronized void append(GameRecord record) throws IOException {
+        int size = record.getSize();
+        if (size > MAX_SIZE) {
+            throw new IllegalArgumentException("Game records support boards up to " + MAX_SIZE + "x" + MAX_SIZE);
+        }
+        byte[] black = name(record.getBlack());
+        byte[] white = name(record.getWhite());
+        int plies = record.getPlies();
+        int moveBytes = moveBytes(size);
+        int length = 1 + 1 + black.length + 1 + white.length + 2 + 2 + 2 + plies * (moveBytes + 4);
+        if (buffer.capacity() < 4 + length) {
+            buffer = ByteBuffer.allocate(Math.max(4 + length, 2 * buffer.capacity()));
+        }
+        buffer.clear();
+        buffer.putInt(length);
+        buffer.put((byte) size);
+        buffer.put((byte) black.length).put(black);
+        buffer.put((byte) white.length).put(white);
+        buffer.putShort((short) record.getBlackTokens());
+        buffer.putShort((short) record.getWhiteTokens());
+        buffer.putShort((short) plies);
+        int pass = moveBytes == 1 ? 0xFF : 0xFFFF;
+        for (int ply = 0; ply < plies; ply++) {
+            int move = record.getMove(ply) == GameState.PASS ? pass : record.getMove(ply);
+            if (moveBytes == 1) {
+                buffer.put((byte) move);
+            } else {
+                buffer.putShort((short) move);
+            }
+        }
+        for (int ply = 0; ply < plies; ply++) {
+            buffer.putInt(record.getThinkMicros(ply));
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Returns the number of bytes per move on boards of the given size.
+     */
+    static int moveBytes(int size) {
+        return size * size < 0xFF ? 1 : 2;
+    }
+
+    private static byte[] name(String identifier) {
+        byte[] bytes = identifier.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_NAME) {
+            throw new IllegalArgumentException("Identifier longer than " + MAX_NAME + " bytes: " + identifier);
+        }
+        return bytes;
+    }
+}
@@ -1,4 +1,5 @@
 import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * Class to represent the state of a game of Othello.  The state is defined by a 2-dimensional
@@ -10,6 +11,23 @@ public class GameState {
 	private int[][] board; 		// Possible values: 0 (empty), 1 (black), 2 (white)
 	private int currentPlayer; 	// The player who is next to put a token on the board. Value is 1 or 2.
 	private int size;  			// The number of columns = the number of rows on the board
+	private Zobrist zobrist;	// The keys used for hashing positions on boards of this size
+	private long hash;			// Zobrist hash of the board and player in turn, kept up to date by every change
+	private Utility utility;	// The utility values summed up in positionalSums
+	private int[] tokenCounts = new int[3];		// Number of tokens of player 1 and 2, kept up to date by every change
+	private int[] positionalSums = new int[3];	// Sum of the utility values of the squares holding tokens of player 1 and 2
+
+	// Undo information for applyMove/undoMove: the squares flipped by all applied moves, and for each
+	// applied move the square played (PASS for a pass) and the index in flipStack where its flips start
+	private int[] flipStack = new int[32];
+	private int flipTop;
+	private int[] moveSquares = new int[16];
+	private int[] moveFlipStarts = new int[16];
+	private long[] moveHashes = new long[16];
+	private int moveTop;
+
+	/** Square index used by applyPass to record a pass on the undo stack */
+	public static final int PASS = -1;
 	
 	//************ Constructors ****************//
 	/**
@@ -29,6 +47,9 @@ public class GameState {
         board[half+1][half+1] = 1;
         board[half][half+1] = 2;
         board[half+1][half] = 2; // de 4 startbrikker bliver placeret
+        zobrist = Zobrist.forSize(size);
+        hash = zobrist.hash(board, currentPlayer);
+        initializeSums();
 	}
 	
 	/**
@@ -47,16 +68,91 @@ public class GameState {
 			}
 		}
 		this.currentPlayer = playerToTakeTurn;
+		this.zobrist = Zobrist.forSize(size);
+		this.hash = zobrist.hash(this.board, currentPlayer);
+		initializeSums();
+	}
+
+	/**
+	 * Counts the tokens and utility values of both players from scratch; from then on they are
+	 * updated incrementally as tokens are placed and flipped.
+	 */
+	private void initializeSums(){
+		utility = Utility.forSize(size);
+		for (int i = 0; i < size; i++){
+			for (int j = 0; j < size; j++){
+				int player = board[i][j];
+				if ( player != 0 ){
+					tokenCounts[player]++;
+					positionalSums[player] += utility.squareUtility(i*size + j);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Constructor for subclasses that keep the board in their own representation. No array
+	 * is allocated, so such subclasses must override every method that touches the board or the player in turn.
+	 * @param size Number of columns (and number of rows) in the board.
+	 */
+	protected GameState(int size){
+		this.size = size;
+	}
+
+	//************ Factory methods ****************//
+	/**
+	 * Returns a new game in its initial position, backed by the fastest implementation available
+	 * for the given size: bitboards for 8x8 boards, multi-word bitboards for other sizes up to
+	 * LargeBitboardGameState.MAX_SIZE, the array representation otherwise.
+	 * @param size Number of columns (and number of rows) in the board.
+	 * @param playerToStart The player who will go first. Should be 1 (black) or 2 (white).
+	 */
+	public static GameState create(int size, int playerToStart){
+		if ( size == BitboardGameState.SIZE )
+			return new BitboardGameState(playerToStart);
+		if ( size <= LargeBitboardGameState.MAX_SIZE )
+			return new LargeBitboardGameState(size, playerToStart);
+		return new GameState(size, playerToStart);
+	}
+
+	/**
+	 * Returns a game state equal to the one represented by the supplied board and player, backed by
+	 * the fastest implementation available for the size of the board.
+	 * @param board The 2 dimensions of the array should have equal length, and possible values should be
+	 * 0 (empty), 1 (black) or 2 (white).
+	 * @param playerToTakeTurn The player who will be the first to take a turn.
+	 */
+	public static GameState create(int[][] board, int playerToTakeTurn){
+		if ( board.length == BitboardGameState.SIZE )
+			return new BitboardGameState(board, playerToTakeTurn);
+		if ( board.length <= LargeBitboardGameState.MAX_SIZE )
+			return new LargeBitboardGameState(board, playerToTakeTurn);
+		return new GameState(board, playerToTakeTurn);
+	}
+
+	/**
+	 * Returns an independent copy of this game state using the same representation.
+	 */
+	public GameState copy(){
+		return new GameState(board, currentPlayer);
 	}
 	
 	//************ Getter methods *******************//
 	/**
-	 * Returns the array representing the board of this game state
+	 * Returns the array representing the board of this game state. It must not be modified, as the
+	 * hash, token counts and positional sums are only updated by the methods of this class.
 	 */
 	public int[][] getBoard(){
 		return board;
 	}
 
+	/**
+	 * Returns the number of columns (= the number of rows) on the board.
+	 */
+	public int getSize(){
+		return size;
+	}
+
 	/**
 	 * Returns the player whose turn it is, i.e. 1 (black) or 2 (white).
 	 */
@@ -64,30 +160,71 @@ public class GameState {
 		return currentPlayer;
 	}
 
+	/**
+	 * Returns the Zobrist hash (see Zobrist) of the board and the player in turn. The hash is updated
+	 * incrementally on every change, so reading it is free. Equal positions have equal hashes, whichever
+	 * implementation holds them.
+	 */
+	public long getHash(){
+		return hash;
+	}
+
 	//************* Methods ****************//
 	/**
 	 * Skips the turn of the current player (without) changing the board.
 	 */
 	public void changePlayer(){
 		currentPlayer = currentPlayer == 1 ? 2 : 1;
+		hash ^= zobrist.whiteToMove();
 	}
 	
 	/**
 	 * Returns true if the game is finished (i.e. none of the players can make any legal moves)
-	 * and false otherwise.
+	 * and false otherwise. Stops at the first legal move found and does not change the state, so
+	 * it is safe to call while other threads read the same state.
 	 */
 	public boolean isFinished(){
-		if ( !legalMoves().isEmpty() )
-			return false;
-		else{ //current player has no legal moves
-			changePlayer();
-			if ( legalMoves().isEmpty() ) //next player also has no legal moves
-				return true;
-			else{
-				changePlayer();
-				return false;
+		return !hasLegalMove(currentPlayer) && !hasLegalMove(currentPlayer == 1 ? 2 : 1);
+	}
+
+	/**
+	 * Same as isFinished(), for a caller that has already generated the current player's moves with
+	 * legalMoves(int[]): only if there were none is the opponent checked.
+	 * @param moveCount The number of legal moves of the current player.
+	 */
+	public boolean isFinished(int moveCount){
+		return moveCount == 0 && !hasLegalMove(getPlayerInTurn() == 1 ? 2 : 1);
+	}
+
+	/**
+	 * Returns true if the given player could put a token somewhere if it were their turn.
+	 * Stops at the first legal move found.
+	 * @param player 1 (black) or 2 (white)
+	 */
+	public boolean hasLegalMove(int player){
+		for (int i = 0; i < size; i++){
+			for (int j = 0; j < size; j++){
+				if ( board[i][j] == 0 && capturesAny(i, j, player) )
+					return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the number of squares where the given player could put a token if it were their turn,
+	 * i.e. the player's mobility.
+	 * @param player 1 (black) or 2 (white)
+	 */
+	public int countLegalMoves(int player){
+		int count = 0;
+		for (int i = 0; i < size; i++){
+			for (int j = 0; j < size; j++){
+				if ( board[i][j] == 0 && capturesAny(i, j, player) )
+					count++;
 			}
 		}
+		return count;
 	}
 	
 	/**
@@ -95,17 +232,41 @@ public class GameState {
 	 * with the numbers in that order.
 	 */
 	public int[] countTokens(){
-    	int tokens1 = 0;
-    	int tokens2 = 0;
-    	for (int i = 0; i < size; i++){
-    		for (int j = 0; j < size; j++){
-    			if ( board[i][j] == 1 )
-    				tokens1++;
-    			else if ( board[i][j] == 2 )
-    				tokens2++;
-    		}
-    	}
-    	return new int[]{tokens1, tokens2};
+    	return new int[]{tokenCounts[1], tokenCounts[2]};
+	}
+
+	/**
+	 * Returns the number of tokens of the given player. The counts are kept up to date as moves are
+	 * made, so this takes constant time and does not allocate.
+	 * @param player 1 (black) or 2 (white)
+	 */
+	public int countTokens(int player){
+		return tokenCounts[player];
+	}
+
+	/**
+	 * Returns the sum of the utility values of the squares holding tokens of the given player, minus
+	 * the sum for the squares holding tokens of the opponent.
+	 * The sums for Utility.forSize(getSize()) are kept up to date as moves are made, so for that table
+	 * this takes constant time; other tables are summed over the board.
+	 * @param player 1 (black) or 2 (white)
+	 * @param utility The utility values, which must be for boards of this size.
+	 */
+	public int positionalScore(int player, Utility utility){
+		if ( utility == this.utility )
+			return positionalSums[player] - positionalSums[player == 1 ? 2 : 1];
+		int[] values = utility.squareValues();
+		int score = 0;
+		for (int i = 0; i < size; i++){
+			int[] column = board[i];
+			for (int j = 0; j < size; j++){
+				if ( column[j] == player )
+					score += values[i*size + j];
+				else if ( column[j] != 0 )
+					score -= values[i*size + j];
+			}
+		}
+		return score;
 	}
 	
 	/**
@@ -116,71 +277,281 @@ public class GameState {
     public boolean insertToken(Position place) { 
     	if ( place.col < 0 || place.row < 0 || place.col >= size || place.row >= size ) //not a position on the board
     		return false;
-    	if ( board[place.col][place.row] != 0 ) // The position is not empty
+    	return insertToken(toSquare(place));
+    }
+
+	/**
+	 * Same as insertToken(Position), but with the place given as a square index (see toSquare).
+	 */
+    public boolean insertToken(int square) { 
+    	if ( !applyMove(square) )
+    		return false;
+    	// The move is permanent, so its undo information is not kept
+    	moveTop--;
+    	flipTop = moveFlipStarts[moveTop];
+    	return true;
+    }
+
+	/**
+	 * Puts a token for the current player on the given square like insertToken(int), but records the flipped
+	 * tokens so the move can be taken back with undoMove(). This lets a search play and retract moves on a
+	 * single game state instead of copying it for every node. Returns false, and changes nothing, if the move
+	 * is not legal.
+	 * @param square The square index (see toSquare) to put the token on.
+	 */
+    public boolean applyMove(int square) { 
+    	if ( square < 0 || square >= size*size ) //not a position on the board
+    		return false;
+    	int col = square / size;
+    	int row = square % size;
+    	if ( board[col][row] != 0 ) // The position is not empty
     		return false;
 
-    	boolean capturesFound = false;
+    	int flipStart = flipTop;
+    	long previousHash = hash;
+    	int opponent = (currentPlayer == 1 ? 2 : 1);
     	// Capturing all possible opponents of the current player
     	for (int deltaX = -1; deltaX <= 1; deltaX++){
     		for (int deltaY = -1; deltaY <= 1; deltaY++){
-        		int captives = captureInDirection(place, deltaX, deltaY); 
-        		if ( captives > 0){
-        			capturesFound = true;
-        			for ( int i = 1; i <= captives; i++)
-        				board[place.col+deltaX*i][place.row+deltaY*i]=currentPlayer;
+        		int captives = captureInDirection(col, row, deltaX, deltaY, currentPlayer); 
+        		for ( int i = 1; i <= captives; i++){
+        			int captured = (col+deltaX*i)*size + row+deltaY*i;
+        			int value = utility.squareUtility(captured);
+        			board[col+deltaX*i][row+deltaY*i]=currentPlayer;
+        			hash ^= zobrist.token(opponent, captured) ^ zobrist.token(currentPlayer, captured);
+        			positionalSums[currentPlayer] += value;
+        			positionalSums[opponent] -= value;
+        			pushFlip(captured);
         		}
         	}		
     	}
     	
-    	if ( capturesFound ){
-    		// Place the token at the given place
-    		board[place.col][place.row] = currentPlayer;
-    		this.changePlayer();
-    		return true;
-    	}
-    	else {
+    	if ( flipTop == flipStart ) // No captures, so the move is not legal
     		return false;
+    	// Place the token at the given place
+    	board[col][row] = currentPlayer;
+    	hash ^= zobrist.token(currentPlayer, square);
+    	int flips = flipTop - flipStart;
+    	tokenCounts[currentPlayer] += flips + 1;
+    	tokenCounts[opponent] -= flips;
+    	positionalSums[currentPlayer] += utility.squareUtility(square);
+    	pushMove(square, flipStart, previousHash);
+    	this.changePlayer();
+    	return true;
+    }
+
+	/**
+	 * Skips the turn of the current player like changePlayer(), but records it so it can be taken back with
+	 * undoMove().
+	 */
+    public void applyPass(){
+    	pushMove(PASS, flipTop, hash);
+    	changePlayer();
+    }
+
+	/**
+	 * Takes back the most recent move or pass made with applyMove or applyPass, restoring the board and the
+	 * player in turn. Must only be called when there is such a move that has not been taken back yet.
+	 */
+    public void undoMove(){
+    	moveTop--;
+    	changePlayer(); // The player who made the move is in turn again
+    	int square = moveSquares[moveTop];
+    	if ( square == PASS ){
+    		hash = moveHashes[moveTop];
+    		return;
+    	}
+    	int opponent = (currentPlayer == 1 ? 2 : 1);
+    	int flipStart = moveFlipStarts[moveTop];
+    	for (int i = flipStart; i < flipTop; i++){
+    		int value = utility.squareUtility(flipStack[i]);
+    		board[flipStack[i] / size][flipStack[i] % size] = opponent;
+    		positionalSums[currentPlayer] -= value;
+    		positionalSums[opponent] += value;
     	}
+    	tokenCounts[currentPlayer] -= flipTop - flipStart + 1;
+    	tokenCounts[opponent] += flipTop - flipStart;
+    	positionalSums[currentPlayer] -= utility.squareUtility(square);
+    	flipTop = flipStart;
+    	board[square / size][square % size] = 0;
+    	hash = moveHashes[moveTop];
+    }
+
+    private void pushFlip(int square){
+    	if ( flipTop == flipStack.length )
+    		flipStack = Arrays.copyOf(flipStack, flipStack.length*2);
+    	flipStack[flipTop++] = square;
+    }
+
+    private void pushMove(int square, int flipStart, long previousHash){
+    	if ( moveTop == moveSquares.length ){
+    		moveSquares = Arrays.copyOf(moveSquares, moveSquares.length*2);
+    		moveFlipStarts = Arrays.copyOf(moveFlipStarts, moveFlipStarts.length*2);
+    		moveHashes = Arrays.copyOf(moveHashes, moveHashes.length*2);
+    	}
+    	moveSquares[moveTop] = square;
+    	moveFlipStarts[moveTop] = flipStart;
+    	moveHashes[moveTop] = previousHash;
+    	moveTop++;
     }
 
     /**
      * Returns a list of all the positions on the board that constitutes a legal move for the current player.
+     * Every position occurs once, in the order of their square indices.
      */
     public ArrayList<Position> legalMoves(){
-    	ArrayList<Position> posPlaces = new ArrayList<Position>();
+    	int[] moves = new int[size*size];
+    	int count = legalMoves(moves);
+    	ArrayList<Position> legalPlaces = new ArrayList<Position>(count);
+    	for (int i = 0; i < count; i++)
+    		legalPlaces.add(toPosition(moves[i]));
+    	return legalPlaces;
+    }
+
+    /**
+     * Writes the square indices (see toSquare) of all legal moves for the current player into the given buffer,
+     * in increasing order and without duplicates, and returns how many were written. Nothing is allocated, so this
+     * is the variant to use in search loops.
+     * @param moves Buffer receiving the moves. Must have room for getSize()*getSize() entries.
+     */
+    public int legalMoves(int[] moves){
+    	int count = 0;
     	for (int i = 0; i < this.size; i++){
     		for (int j = 0; j < this.size; j++){
-    			if ( board[i][j] == 0 ){
-    				posPlaces.add(new Position(i,j));
-    			}
+    			if ( board[i][j] == 0 && capturesAny(i, j, currentPlayer) )
+    				moves[count++] = i*size + j;
     		}
     	}
-    	ArrayList<Position> legalPlaces = new ArrayList<Position>();
-    	for (Position p: posPlaces){
-    		for (int deltaX = -1; deltaX <= 1; deltaX++){
-    			for (int deltaY = -1; deltaY <= 1; deltaY++){
-    				if ( captureInDirection(p, deltaX, deltaY) > 0 ){
-    	    			legalPlaces.add(p);
-    				}
-    			}
+    	return count;
+    }
+
+    /**
+     * Returns the square index of the given position, i.e. col*getSize() + row.
+     */
+    public int toSquare(Position p){
+    	return p.col*size + p.row;
+    }
+
+    /**
+     * Returns the position of the given square index.
+     */
+    public Position toPosition(int square){
+    	return new Position(square / size, square % size);
+    }
+
+	//************ Symmetry ****************//
+	/**
+	 * Returns which of the 8 rotations and reflections of the board (numbered as in Symmetry) maps
+	 * this position to its canonical form: the one whose black tokens, and then white tokens, are
+	 * smallest when read as a binary number with bit i for square i. All mirrored versions of a
+	 * position have the same canonical form. If several transformations give it, the lowest is returned.
+	 */
+	public int canonicalSymmetry(){
+		Symmetry symmetry = Symmetry.forSize(size);
+		int[][] board = getBoard();
+		int[] squares = new int[size*size];	// The board by square index, so the remap tables index it directly
+		for (int col = 0; col < size; col++){
+			System.arraycopy(board[col], 0, squares, col*size, size);
+		}
+		int best = Symmetry.IDENTITY;
+		for (int t = 1; t < Symmetry.COUNT; t++){
+			if ( compareTransformed(squares, symmetry.inverses(t), symmetry.inverses(best)) < 0 )
+				best = t;
+		}
+		return best;
+	}
+
+	/**
+	 * Compares the board after two transformations, in the order used by canonicalSymmetry.
+	 * @param squares The board, indexed by square.
+	 * @param a For each square of the first transformed board, the square of the board it comes from.
+	 * @param b The same for the second transformed board.
+	 */
+	private int compareTransformed(int[] squares, int[] a, int[] b){
+		for (int player = 1; player <= 2; player++){
+			for (int square = squares.length - 1; square >= 0; square--){
+				boolean inA = squares[a[square]] == player;
+				boolean inB = squares[b[square]] == player;
+				if ( inA != inB )
+					return inA ? 1 : -1;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Returns the Zobrist hash of the canonical form of this position (see canonicalSymmetry),
+	 * which is the same for all mirrored versions of the position. Moves are mapped to and from
+	 * the canonical form with Symmetry.transform and Symmetry.inverse.
+	 */
+	public long canonicalHash(){
+		return transformedHash(canonicalSymmetry());
+	}
+
+	/**
+	 * Returns the Zobrist hash the position would have after the given transformation.
+	 * @param symmetry The transformation, 0 to 7, numbered as in Symmetry.
+	 */
+	public long transformedHash(int symmetry){
+		Zobrist keys = Zobrist.forSize(size);
+		int[] remap = Symmetry.forSize(size).squares(symmetry);
+		int[][] board = getBoard();
+		long h = getPlayerInTurn() == 2 ? keys.whiteToMove() : 0;
+		for (int col = 0; col < size; col++){
+			for (int row = 0; row < size; row++){
+				if ( board[col][row] != 0 )
+					h ^= keys.token(board[col][row], remap[col*size + row]);
+			}
+		}
+		return h;
+	}
+
+	/**
+	 * Returns a new game state holding this position after the given transformation, with the
+	 * same player in turn and the same representation.
+	 * @param symmetry The transformation, 0 to 7, numbered as in Symmetry.
+	 */
+	public GameState transformed(int symmetry){
+		int[] remap = Symmetry.forSize(size).squares(symmetry);
+		int[][] board = getBoard();
+		int[][] result = new int[size][size];
+		for (int col = 0; col < size; col++){
+			for (int row = 0; row < size; row++){
+				int square = remap[col*size + row];
+				result[square / size][square % size] = board[col][row];
+			}
+		}
+		return new GameState(result, getPlayerInTurn());
+	}
+
+    /**
+     * Checks whether the given player would capture any tokens by putting a token at the given place.
+     */
+    private boolean capturesAny(int col, int row, int player){
+    	for (int deltaX = -1; deltaX <= 1; deltaX++){
+    		for (int deltaY = -1; deltaY <= 1; deltaY++){
+    			if ( captureInDirection(col, row, deltaX, deltaY, player) > 0 )
+    				return true;
     		}
     	}
-    	return legalPlaces;
-    }	
+    	return false;
+    }
     
     /**
      * Checks how many tokens of the opponent the player can capture in the direction given by deltaX and deltaY
      * if the player puts a token at the given position.
-     * @param p A position on the board
+     * @param col The column of a position on the board
+     * @param row The row of a position on the board
      * @param deltaX The step to be taken in the x-direction. Should be -1 (left), 0 (none), or 1 (right).
      * @param deltaY The step to be taken in the delta direction. Should be -1 (up), 0 (none), or 1 (down).
+     * @param player The player putting the token, 1 (black) or 2 (white).
      */
-    private int captureInDirection(Position p, int deltaX, int deltaY){
-    	int opponent = (currentPlayer == 1 ? 2 : 1); 
+    private int captureInDirection(int col, int row, int deltaX, int deltaY, int player){
+    	int opponent = (player == 1 ? 2 : 1); 
         
     	int captured = 0;
-    	int cc = p.col;
-    	int rr = p.row;
+    	int cc = col;
+    	int rr = row;
         while ( 0 <= cc+deltaX && cc+deltaX < size && 0 <= rr+deltaY && rr+deltaY < size 
     			&& board[cc+deltaX][rr+deltaY] == opponent ){ 
         	cc = cc + deltaX;
@@ -188,7 +559,7 @@ public class GameState {
         	captured++;
         }
         if ( 0 <= cc+deltaX && cc+deltaX < size  && 0 <= rr+deltaY && rr+deltaY < size 
-    			&& board[cc+deltaX][rr+deltaY] == currentPlayer && captured > 0 ){
+    			&& board[cc+deltaX][rr+deltaY] == player && captured > 0 ){
         	return captured;
         }
         else
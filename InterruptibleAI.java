@@ -0,0 +1,30 @@
+/**
+ * An AI whose search can be watched and cut short from another thread, e.g. by the GUI while the
+ * AI thinks on a background thread.
+ */
+public interface InterruptibleAI extends IOthelloAI {
+
+    /**
+     * Makes a running decideMove return as soon as possible with the best move found so far.
+     * Safe to call from any thread; does nothing if no search is running.
+     */
+    public void stopSearch();
+
+    /**
+     * Returns the depth the running search is at, or of the last search if none is running.
+     * Safe to call from any thread.
+     */
+    public int getSearchDepth();
+
+    /**
+     * Returns the number of nodes the running search has visited so far, or the last search if
+     * none is running. Safe to call from any thread, but only approximate while a search runs.
+     */
+    public long getSearchNodes();
+
+    /**
+     * Tells the AI that its game is over, so it stops whatever it still does in the background,
+     * e.g. pondering, and waits for that to end. Called after its last decideMove has returned.
+     */
+    public void gameOver();
+}
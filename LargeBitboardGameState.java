@@ -0,0 +1,497 @@
+import java.util.Arrays;
+
+/**
+ * Game state for boards of any size up to MAX_SIZE, backed by one array of longs per player with
+ * one long per column: square (col, row) is bit row of word col. Moving one row is a shift of a
+ * word, and moving one column is a step to the next word.
+ *
+ * Legal moves are generated for all squares at once with shift-and-mask operations. Runs along a
+ * column are found within its word, by carry propagation upwards and a parallel-prefix fill
+ * downwards. Runs across columns (horizontal and diagonal) are found in one sweep over the columns
+ * from each side, which carries the runs of opponent tokens reaching the current column along.
+ * Flips are found the same way from the square played: within its column with masks, and across
+ * the columns by following the three directions to each side together.
+ *
+ * The token counts and positional sums are kept up to date as in GameState. Behaves exactly like
+ * the array-based GameState; 8x8 boards are faster still with BitboardGameState.
+ */
+public class LargeBitboardGameState extends GameState {
+    /** The largest board size supported, so that a column and its shifts fit in a long */
+    static final int MAX_SIZE = 32;
+
+    private final int size;
+    private final long full;        // The bits of all rows of a column
+    private final Zobrist zobrist;
+    private final Utility utility;  // The utility values summed up in positionalSums
+
+    private final long[] black;     // Per column, the bits of the rows holding a token of player 1
+    private final long[] white;     // Per column, the bits of the rows holding a token of player 2
+    private int currentPlayer;      // The player who is next to put a token on the board. Value is 1 or 2.
+    private long hash;              // Zobrist hash of the position, kept up to date by every change
+    private final int[] tokenCounts = new int[3];
+    private final int[] positionalSums = new int[3];
+    private final long[] moveBuffer; // The legal moves per column, for legalMoves; every search thread has its own copy of the state
+
+    // Undo information for applyMove/undoMove, as in GameState: the squares flipped by all applied moves,
+    // and per applied move the square played (PASS for a pass) and the index in flipStack where its flips start
+    private int[] flipStack = new int[32];
+    private int flipTop;
+    private int[] moveSquares = new int[16];
+    private int[] moveFlipStarts = new int[16];
+    private long[] moveHashes = new long[16];
+    private int moveTop;
+
+    /**
+     * Initializes a board in the standard starting position.
+     *
+     * @param size Number of columns (and number of rows) in the board, at most MAX_SIZE.
+     * @param playerToStart The player who will go first. Should be 1 (black) or 2 (white).
+     */
+    public LargeBitboardGameState(int size, int playerToStart){
+        super(size);
+        this.size = checkSize(size);
+        this.full = (1L << size) - 1;
+        this.zobrist = Zobrist.forSize(size);
+        this.utility = Utility.forSize(size);
+        this.black = new long[size];
+        this.white = new long[size];
+        this.moveBuffer = new long[size];
+        int half = size/2-1;
+        black[half] |= 1L << half;
+        black[half+1] |= 1L << (half+1);
+        white[half] |= 1L << (half+1);
+        white[half+1] |= 1L << half;
+        this.currentPlayer = playerToStart;
+        initialize();
+    }
+
+    /**
+     * Constructs a new game state that equals the one represented by the supplied board and player.
+     *
+     * @param board A square array of at most MAX_SIZE columns with values 0 (empty), 1 (black) or 2 (white).
+     * @param playerToTakeTurn The player who will be the first to take a turn.
+     */
+    public LargeBitboardGameState(int[][] board, int playerToTakeTurn){
+        super(board.length);
+        this.size = checkSize(board.length);
+        this.full = (1L << size) - 1;
+        this.zobrist = Zobrist.forSize(size);
+        this.utility = Utility.forSize(size);
+        this.black = new long[size];
+        this.white = new long[size];
+        this.moveBuffer = new long[size];
+        for (int col = 0; col < size; col++) {
+            for (int row = 0; row < size; row++) {
+                if (board[col][row] == 1) {
+                    black[col] |= 1L << row;
+                } else if (board[col][row] == 2) {
+                    white[col] |= 1L << row;
+                }
+            }
+        }
+        this.currentPlayer = playerToTakeTurn;
+        initialize();
+    }
+
+    private LargeBitboardGameState(LargeBitboardGameState other){
+        super(other.size);
+        this.size = other.size;
+        this.full = other.full;
+        this.zobrist = other.zobrist;
+        this.utility = other.utility;
+        this.black = other.black.clone();
+        this.white = other.white.clone();
+        this.moveBuffer = new long[size];
+        this.currentPlayer = other.currentPlayer;
+        this.hash = other.hash;
+        System.arraycopy(other.tokenCounts, 0, tokenCounts, 0, 3);
+        System.arraycopy(other.positionalSums, 0, positionalSums, 0, 3);
+    }
+
+    private static int checkSize(int size){
+        if (size > MAX_SIZE) {
+            throw new IllegalArgumentException("Multi-word bitboards support boards up to " + MAX_SIZE + "x" + MAX_SIZE);
+        }
+        return size;
+    }
+
+    /**
+     * Computes the hash, token counts and positional sums from scratch.
+     */
+    private void initialize(){
+        hash = currentPlayer == 2 ? zobrist.whiteToMove() : 0;
+        for (int col = 0; col < size; col++) {
+            for (int player = 1; player <= 2; player++) {
+                for (long bits = tokens(player)[col]; bits != 0; bits &= bits - 1) {
+                    int square = col * size + Long.numberOfTrailingZeros(bits);
+                    hash ^= zobrist.token(player, square);
+                    tokenCounts[player]++;
+                    positionalSums[player] += utility.squareUtility(square);
+                }
+            }
+        }
+    }
+
+    @Override
+    public GameState copy(){
+        return new LargeBitboardGameState(this);
+    }
+
+    /**
+     * Returns a freshly built array with the contents of the board. Changes to the array
+     * are not reflected in this game state.
+     */
+    @Override
+    public int[][] getBoard(){
+        int[][] board = new int[size][size];
+        for (int col = 0; col < size; col++) {
+            for (int row = 0; row < size; row++) {
+                if ((black[col] >>> row & 1) != 0) {
+                    board[col][row] = 1;
+                } else if ((white[col] >>> row & 1) != 0) {
+                    board[col][row] = 2;
+                }
+            }
+        }
+        return board;
+    }
+
+    @Override
+    public int getPlayerInTurn(){
+        return currentPlayer;
+    }
+
+    @Override
+    public long getHash(){
+        return hash;
+    }
+
+    @Override
+    public void changePlayer(){
+        currentPlayer = currentPlayer == 1 ? 2 : 1;
+        hash ^= zobrist.whiteToMove();
+    }
+
+    @Override
+    public boolean isFinished(){
+        return !generateMoves(black, white, null) && !generateMoves(white, black, null);
+    }
+
+    @Override
+    public boolean hasLegalMove(int player){
+        return player == 1 ? generateMoves(black, white, null) : generateMoves(white, black, null);
+    }
+
+    @Override
+    public int countLegalMoves(int player){
+        if (player == 1) {
+            generateMoves(black, white, moveBuffer);
+        } else {
+            generateMoves(white, black, moveBuffer);
+        }
+        int count = 0;
+        for (long moves : moveBuffer) {
+            count += Long.bitCount(moves);
+        }
+        return count;
+    }
+
+    @Override
+    public int[] countTokens(){
+        return new int[]{tokenCounts[1], tokenCounts[2]};
+    }
+
+    @Override
+    public int countTokens(int player){
+        return tokenCounts[player];
+    }
+
+    @Override
+    public int positionalScore(int player, Utility utility){
+        if (utility == this.utility) {
+            return positionalSums[player] - positionalSums[player == 1 ? 2 : 1];
+        }
+        int[] values = utility.squareValues();
+        long[] own = tokens(player);
+        long[] opp = tokens(player == 1 ? 2 : 1);
+        int score = 0;
+        for (int col = 0; col < size; col++) {
+            for (long bits = own[col]; bits != 0; bits &= bits - 1) {
+                score += values[col * size + Long.numberOfTrailingZeros(bits)];
+            }
+            for (long bits = opp[col]; bits != 0; bits &= bits - 1) {
+                score -= values[col * size + Long.numberOfTrailingZeros(bits)];
+            }
+        }
+        return score;
+    }
+
+    @Override
+    public boolean insertToken(int square){
+        if (!applyMove(square)) {
+            return false;
+        }
+        // The move is permanent, so its undo information is not kept
+        moveTop--;
+        flipTop = moveFlipStarts[moveTop];
+        return true;
+    }
+
+    @Override
+    public boolean applyMove(int square){
+        if (square < 0 || square >= size * size) {
+            return false;
+        }
+        int col = square / size;
+        int row = square % size;
+        long bit = 1L << row;
+        if (((black[col] | white[col]) & bit) != 0) {
+            return false;
+        }
+        long[] own = tokens(currentPlayer);
+        long[] opp = tokens(currentPlayer == 1 ? 2 : 1);
+        int opponent = currentPlayer == 1 ? 2 : 1;
+        int flipStart = flipTop;
+        long previousHash = hash;
+
+        // Along the column: the opponent tokens up to the first other square above and below, if that is an own token
+        long o = opp[col];
+        long stop = Long.lowestOneBit(~o & -(bit << 1));
+        long captures = (stop & own[col]) != 0 ? (stop - 1) & -(bit << 1) : 0;
+        stop = Long.highestOneBit(~o & (bit - 1));
+        if ((stop & own[col]) != 0) {
+            captures |= (bit - 1) & -(stop << 1);
+        }
+        flip(col, captures, own, opp, opponent);
+
+        // Across the columns, to each side: the three directions are followed together, one column per
+        // step, as the bit each is at in that column, until none of them is at an opponent token. A run
+        // of k opponent tokens ending at an own token flips one square in each of the next k columns.
+        for (int dc = -1; dc <= 1; dc += 2) {
+            long up = (bit << 1) & full;
+            long flat = bit;
+            long down = bit >>> 1;
+            int upRun = 0;
+            int flatRun = 0;
+            int downRun = 0;
+            int k = 0;
+            for (int c = col + dc; c >= 0 && c < size && (up | flat | down) != 0; c += dc) {
+                long w = own[c];
+                o = opp[c];
+                if ((up & w) != 0) {
+                    upRun = k;
+                }
+                if ((flat & w) != 0) {
+                    flatRun = k;
+                }
+                if ((down & w) != 0) {
+                    downRun = k;
+                }
+                up = ((up & o) << 1) & full;
+                flat &= o;
+                down = (down & o) >>> 1;
+                k++;
+            }
+            int run = Math.max(upRun, Math.max(flatRun, downRun));
+            for (k = 1; k <= run; k++) {
+                captures = (k <= upRun ? bit << k : 0) | (k <= flatRun ? bit : 0) | (k <= downRun ? bit >>> k : 0);
+                flip(col + dc * k, captures, own, opp, opponent);
+            }
+        }
+        if (flipTop == flipStart) { // No captures, so the move is not legal
+            return false;
+        }
+        own[col] |= bit;
+        hash ^= zobrist.token(currentPlayer, square);
+        int flips = flipTop - flipStart;
+        tokenCounts[currentPlayer] += flips + 1;
+        tokenCounts[opponent] -= flips;
+        positionalSums[currentPlayer] += utility.squareUtility(square);
+        pushMove(square, flipStart, previousHash);
+        changePlayer();
+        return true;
+    }
+
+    @Override
+    public void applyPass(){
+        pushMove(PASS, flipTop, hash);
+        changePlayer();
+    }
+
+    @Override
+    public void undoMove(){
+        moveTop--;
+        currentPlayer = currentPlayer == 1 ? 2 : 1; // The player who made the move is in turn again
+        hash = moveHashes[moveTop];
+        int square = moveSquares[moveTop];
+        if (square == PASS) {
+            return;
+        }
+        int opponent = currentPlayer == 1 ? 2 : 1;
+        long[] own = tokens(currentPlayer);
+        long[] opp = tokens(opponent);
+        int flipStart = moveFlipStarts[moveTop];
+        for (int i = flipStart; i < flipTop; i++) {
+            int flipped = flipStack[i];
+            long bit = 1L << (flipped % size);
+            own[flipped / size] &= ~bit;
+            opp[flipped / size] |= bit;
+            int value = utility.squareUtility(flipped);
+            positionalSums[currentPlayer] -= value;
+            positionalSums[opponent] += value;
+        }
+        tokenCounts[currentPlayer] -= flipTop - flipStart + 1;
+        tokenCounts[opponent] += flipTop - flipStart;
+        positionalSums[currentPlayer] -= utility.squareUtility(square);
+        flipTop = flipStart;
+        own[square / size] &= ~(1L << (square % size));
+    }
+
+    /**
+     * Gives the player in turn the given squares of a column, which hold tokens of the opponent.
+     */
+    private void flip(int col, long squares, long[] own, long[] opp, int opponent){
+        own[col] |= squares;
+        opp[col] &= ~squares;
+        for (; squares != 0; squares &= squares - 1) {
+            int captured = col * size + Long.numberOfTrailingZeros(squares);
+            int value = utility.squareUtility(captured);
+            hash ^= zobrist.token(opponent, captured) ^ zobrist.token(currentPlayer, captured);
+            positionalSums[currentPlayer] += value;
+            positionalSums[opponent] -= value;
+            pushFlip(captured);
+        }
+    }
+
+    private void pushFlip(int square){
+        if (flipTop == flipStack.length) {
+            flipStack = Arrays.copyOf(flipStack, flipStack.length * 2);
+        }
+        flipStack[flipTop++] = square;
+    }
+
+    private void pushMove(int square, int flipStart, long previousHash){
+        if (moveTop == moveSquares.length) {
+            moveSquares = Arrays.copyOf(moveSquares, moveSquares.length * 2);
+            moveFlipStarts = Arrays.copyOf(moveFlipStarts, moveFlipStarts.length * 2);
+            moveHashes = Arrays.copyOf(moveHashes, moveHashes.length * 2);
+        }
+        moveSquares[moveTop] = square;
+        moveFlipStarts[moveTop] = flipStart;
+        moveHashes[moveTop] = previousHash;
+        moveTop++;
+    }
+
+    @Override
+    public int legalMoves(int[] moves){
+        if (currentPlayer == 1) {
+            generateMoves(black, white, moveBuffer);
+        } else {
+            generateMoves(white, black, moveBuffer);
+        }
+        int count = 0;
+        for (int col = 0; col < size; col++) {
+            for (long bits = moveBuffer[col]; bits != 0; bits &= bits - 1) {
+                moves[count++] = col * size + Long.numberOfTrailingZeros(bits);
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public GameState transformed(int symmetry){
+        return new LargeBitboardGameState(super.transformed(symmetry).getBoard(), currentPlayer);
+    }
+
+    /**
+     * Returns the tokens of the given player, one word per column with bit row set for every
+     * token in that row. The array is the state itself and must not be modified.
+     *
+     * @param player 1 (black) or 2 (white)
+     */
+    long[] tokens(int player){
+        return player == 1 ? black : white;
+    }
+
+    /**
+     * Finds the squares where the player owning {@code own} can legally put a token.
+     *
+     * @param own The tokens of the player to move, one word per column.
+     * @param opp The tokens of the opponent.
+     * @param moves Receives the legal moves of every column, or null to only find out whether
+     *              there is one, which stops at the first column with a move.
+     * @return Whether there is a legal move.
+     */
+    private boolean generateMoves(long[] own, long[] opp, long[] moves){
+        // Runs of opponent tokens ending next to the current column, that start next to an own token
+        // in a column before it, by the direction of the run: rows going up, the same row, rows going down
+        long up = 0;
+        long flat = 0;
+        long down = 0;
+        long previousOwn = 0;
+        for (int col = 0; col < size; col++) {
+            long o = opp[col];
+            long empty = ~(own[col] | o) & full;
+            long found = columnMoves(own[col], o, empty) | (empty & (((up << 1) & full) | flat | (down >>> 1)));
+            if (moves != null) {
+                moves[col] = found;
+            } else if (found != 0) {
+                return true;
+            }
+            up = o & (((previousOwn | up) << 1) & full);
+            flat = o & (previousOwn | flat);
+            down = o & ((previousOwn | down) >>> 1);
+            previousOwn = own[col];
+        }
+        // The same from the other side, for runs that end in an own token in a later column
+        up = 0;
+        flat = 0;
+        down = 0;
+        previousOwn = 0;
+        for (int col = size - 1; col >= 0; col--) {
+            long o = opp[col];
+            long empty = ~(own[col] | o) & full;
+            long found = empty & (((up << 1) & full) | flat | (down >>> 1));
+            if (moves != null) {
+                moves[col] |= found;
+            } else if (found != 0) {
+                return true;
+            }
+            up = o & (((previousOwn | up) << 1) & full);
+            flat = o & (previousOwn | flat);
+            down = o & ((previousOwn | down) >>> 1);
+            previousOwn = own[col];
+        }
+        if (moves == null) {
+            return false;
+        }
+        for (long m : moves) {
+            if (m != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the moves of one column that capture along the column.
+     */
+    private static long columnMoves(long own, long opp, long empty){
+        // A run above an own token: adding its lowest bit carries through the run to the square above it
+        long upwards = (opp + ((own << 1) & opp)) & empty;
+        // A run below an own token: fill down from the own tokens through the run in 1, 2, 4, 8 and 16 row steps
+        long fill = own;
+        long through = opp;
+        fill |= through & (fill >>> 1);
+        through &= through >>> 1;
+        fill |= through & (fill >>> 2);
+        through &= through >>> 2;
+        fill |= through & (fill >>> 4);
+        through &= through >>> 4;
+        fill |= through & (fill >>> 8);
+        through &= through >>> 8;
+        fill |= through & (fill >>> 16);
+        long downwards = ((fill & opp) >>> 1) & empty;
+        return upwards | downwards;
+    }
+}
@@ -1,12 +1,86 @@
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Implements the Minimax algorithm with Alpha-Beta pruning to determine the best move in Othello.
  * The AI evaluates moves based on token count and board position utility.
  */
-public class Minimax implements IOthelloAI {
+public class Minimax implements InterruptibleAI {
+    /** Number of transposition table entries used when none is given (16 bytes each, so 16 MB) */
+    public static final int DEFAULT_TABLE_ENTRIES = 1 << 20;
+    /** Number of empty squares at or below which 8x8 games are solved exactly when none is given */
+    public static final int DEFAULT_ENDGAME_EMPTIES = 14;
+    /** The same for other board sizes, which the solver searches without bitboards, so more slowly */
+    public static final int DEFAULT_ENDGAME_EMPTIES_OTHER_SIZES = 10;
+
+    // Move ordering scores: the hash move first, then the killers, then by history with the square utility breaking ties
+    private static final int HASH_MOVE_SCORE = Integer.MAX_VALUE;
+    private static final int KILLER_SCORE = 1 << 30;
+    private static final int HISTORY_LIMIT = 1 << 20; // The history table is halved when an entry reaches this
+
     private int depthLimit;
     private Utility utilityTable;
+    private PatternEvaluator patternEvaluator; // Evaluates positions instead of the token count and utility if set
+    private int size;
+    private int[][] moveBuffers; // One buffer of legal moves per remaining depth, reused between nodes
+    private int[][] scoreBuffers; // The ordering score of each move in moveBuffers
+    private TranspositionTable transpositionTable;
+    private int tablePlayer;     // The AI player the values in the transposition table are relative to
+    private boolean symmetricTable; // Whether positions are stored in the table by their canonical form
+    private Symmetry symmetries;
+
+    private long timeBudget;     // Wall-clock time per move in milliseconds, or 0 to always search to depthLimit
+    private volatile long clockStart; // System.nanoTime() at which the time budget of the current search started
+    private volatile long deadline;   // System.nanoTime() at which the current iteration is abandoned
+    private volatile boolean timed;  // Whether the current search may be abandoned at the deadline
+    private volatile boolean stopRequested; // Set when the deadline passed or stopSearch was called; seen by all threads of the search
+    private volatile int searchDepth;       // Depth of the running iteration, for getSearchDepth
+    private int completedDepth;  // Depth of the deepest fully searched iteration of the last decideMove
+    private int rootDepth;       // Depth of the current iteration, so the ply of a node is rootDepth - remaining depth
+    private int rootValue;       // Value of the root found by the last searchRoot
+    private boolean principalVariation; // Whether moves after the first are searched with a null window first (PVS)
+    private int aspirationWindow; // Half-width of the root window around the previous iteration's value, or 0 for a full window
+    private int endgameEmpties;  // Solve exactly at or below this many empty squares, 0 to never
+    private EndgameSolver endgameSolver; // Created on first use
+
+    // Pondering: searching the position after the expected reply while the opponent thinks
+    private static final ExecutorService ponderThreads = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "Minimax ponder");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private boolean ponder;                 // Whether to ponder after every move
+    private volatile boolean pondering;     // Whether the running search is a ponder search, which has no time budget
+    private GameState ponderState;          // The position being pondered, or null
+    private long ponderStart;               // System.nanoTime() at which pondering started
+    private Future<Position> ponderResult;  // The move the ponder search finds
+    private SearchStats ponderStats;        // The statistics of the ponder search, made lastStats on a ponder hit only
+    private SearchEvent ponderEvent;        // The event of the ponder search, committed on a ponder hit only
+    private int ponderHits;                 // Moves answered from a ponder search
+    private int ponderMisses;               // Ponder searches discarded because the opponent played another move
+
+    // Parallel search. Helper threads each borrow a worker: a Minimax sharing the master's tables but with its own buffers.
+    private final Minimax master;           // The instance decideMove was called on; this for the master itself
+    private ForkJoinPool pool;              // null for a single-threaded search
+    private int splitDepth = 3;             // Nodes with at least this remaining depth search their younger brothers in parallel
+    private ConcurrentLinkedQueue<Minimax> idleWorkers;
+    private ConcurrentLinkedQueue<Minimax> allWorkers;     // Every worker created, to merge their statistics
+    private SearchStats lastStats = new SearchStats();    // Merged statistics of the last decideMove
+
+    // Per worker
+    private boolean aborted;     // Set when this worker must unwind without results (deadline, or a cutoff above it)
+    private final SearchStats stats = new SearchStats(); // This worker's counters; its node count also paces the clock checks
+    private Split split;         // The parallel split this worker is searching a sibling for, or null
+    private int[][] killers;     // Per ply, the last two moves that caused a cutoff there
+    private int[][] history;     // Per side (0 for the AI player, 1 for the opponent) and square, how much moves there caused cutoffs
 
     /**
      * Constructs a Minimax AI with a given depth limit.
@@ -15,39 +89,599 @@ public class Minimax implements IOthelloAI {
      * @param depthLimit The maximum search depth for Minimax.
      */
     public Minimax(GameState s, int depthLimit){
+        this(s, depthLimit, DEFAULT_TABLE_ENTRIES, TranspositionTable.ReplacementPolicy.DEPTH_PREFERRED);
+    }
+
+    /**
+     * Constructs a Minimax AI with a given depth limit and a transposition table of bounded size.
+     * The table is kept between calls to decideMove, so reuse the instance for a whole game.
+     *
+     * @param s The initial game state.
+     * @param depthLimit The maximum search depth for Minimax.
+     * @param tableEntries The number of transposition table entries (rounded down to a power of two), or 0 for no table.
+     * @param policy The replacement policy of the transposition table.
+     */
+    public Minimax(GameState s, int depthLimit, int tableEntries, TranspositionTable.ReplacementPolicy policy){
+        this.master = this;
         this.depthLimit = depthLimit;
-        this.utilityTable = new Utility(s);
+        this.utilityTable = Utility.forSize(s.getSize());
+        this.size = s.getSize();
+        this.symmetries = Symmetry.forSize(size);
+        this.endgameEmpties = size == BitboardGameState.SIZE ? DEFAULT_ENDGAME_EMPTIES : DEFAULT_ENDGAME_EMPTIES_OTHER_SIZES;
+        allocateOrderingTables();
+        if (tableEntries > 0) {
+            this.transpositionTable = new TranspositionTable(tableEntries, policy);
+        }
+    }
+
+    /**
+     * Constructs a worker for a parallel search, sharing the tables of the given master.
+     */
+    private Minimax(Minimax master){
+        this.master = master;
+        this.depthLimit = master.depthLimit;
+        this.utilityTable = master.utilityTable;
+        this.patternEvaluator = master.patternEvaluator;
+        this.size = master.size;
+        this.symmetries = master.symmetries;
+        allocateOrderingTables();
+        this.transpositionTable = master.transpositionTable;
+    }
+
+    private void allocateOrderingTables(){
+        this.moveBuffers = new int[depthLimit + 2][size * size];
+        this.scoreBuffers = new int[depthLimit + 2][size * size];
+        this.killers = new int[depthLimit + 2][2];
+        this.history = new int[2][size * size];
+        clearKillers();
+    }
+
+    /**
+     * Sets the number of threads used by decideMove. With more than one thread the search is split
+     * Young Brothers Wait style: at the root and at every node with enough remaining depth, the first
+     * move is searched alone, and then the remaining moves are searched in parallel on a ForkJoinPool,
+     * sharing the best bound found so far and stopping as soon as one of them causes a cutoff.
+     * The move chosen at a fixed depth is the same as with one thread.
+     *
+     * @param threads The number of threads, 1 for a serial search.
+     */
+    public void setThreads(int threads){
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+        if (threads > 1) {
+            pool = new ForkJoinPool(threads);
+            idleWorkers = new ConcurrentLinkedQueue<Minimax>();
+            allWorkers = new ConcurrentLinkedQueue<Minimax>();
+        }
+    }
+
+    /**
+     * Sets the minimum remaining depth at which a node searches its moves in parallel. Lower values
+     * split more often, which balances load better but costs more coordination. Defaults to 3.
+     *
+     * @param splitDepth The minimum remaining depth of a split node.
+     */
+    public void setSplitDepth(int splitDepth){
+        this.splitDepth = splitDepth;
+    }
+
+    /**
+     * Limits the time decideMove may take. With a budget, moves are searched by iterative deepening:
+     * depth 0, 1, 2, ... up to the depth limit, each iteration searching the best move of the previous
+     * one first. When the budget runs out the unfinished iteration is abandoned and the best move of
+     * the deepest completed iteration is returned. The shallowest iteration always completes.
+     *
+     * @param millis The time budget per move in milliseconds, or 0 to always search to the depth limit.
+     */
+    public void setTimeBudget(long millis){
+        this.timeBudget = millis;
+    }
+
+    /**
+     * Sets the number of empty squares at or below which decideMove solves the rest of the game
+     * exactly with an EndgameSolver instead of searching to the depth limit. The solver plays for the
+     * largest final token difference. With a time budget the solver gets a quarter of it; if it has not
+     * finished by then, or stopSearch is called, the heuristic search is used instead. Defaults to
+     * DEFAULT_ENDGAME_EMPTIES on 8x8 boards and DEFAULT_ENDGAME_EMPTIES_OTHER_SIZES otherwise.
+     *
+     * @param empties The number of empty squares, or 0 to never solve exactly.
+     */
+    public void setEndgameThreshold(int empties){
+        this.endgameEmpties = empties;
+    }
+
+    /**
+     * Turns Principal Variation Search on or off. With PVS, every move of a node after the first is
+     * searched with a null window (alpha, alpha + 1) first, which only proves that the move is no
+     * better than the best so far; only moves that turn out better are searched again with the full
+     * window. With good move ordering most moves are refuted by the cheaper null-window search.
+     * The value found, and so the move chosen at a fixed depth, is the same as without. Off by default.
+     *
+     * @param enabled Whether to use PVS.
+     */
+    public void setPrincipalVariationSearch(boolean enabled){
+        this.principalVariation = enabled;
+    }
+
+    /**
+     * Sets aspiration windows for iterative deepening: every iteration after the first searches the
+     * root with the window (v - window, v + window) around the value v of the previous iteration,
+     * and only searches again with the full window if the value falls outside it. Narrow windows
+     * cut more, but fail more often. With a window, decideMove deepens iteratively even without a
+     * time budget, so the move chosen among equally valued ones may differ from a fixed-depth search.
+     *
+     * @param window The half-width of the window in evaluation units, or 0 to always search the full window.
+     */
+    public void setAspirationWindow(int window){
+        this.aspirationWindow = window;
+    }
+
+    /**
+     * Evaluates positions with the given pattern evaluator instead of the token count and square
+     * utility. The transposition table is cleared, as its values came from the other evaluation.
+     *
+     * @param evaluator The evaluator, for the size of the board, or null for the default evaluation.
+     */
+    public void setEvaluator(PatternEvaluator evaluator){
+        if (evaluator != null && evaluator.getSize() != size) {
+            throw new IllegalArgumentException("The evaluator is for size " + evaluator.getSize() + ", not " + size);
+        }
+        this.patternEvaluator = evaluator;
+        if (allWorkers != null) {
+            for (Minimax worker : allWorkers) {
+                worker.patternEvaluator = evaluator;
+            }
+        }
+        if (transpositionTable != null) {
+            transpositionTable.clear();
+        }
+    }
+
+    /**
+     * Makes the transposition table store positions by their canonical form (see
+     * GameState.canonicalHash), so all mirrored versions of a position share one entry and its best
+     * move. Finding the canonical form costs time at every node, so this pays off where many
+     * positions are mirrored, e.g. on symmetric openings. Off by default.
+     *
+     * @param enabled Whether to share table entries between mirrored positions.
+     */
+    public void setSymmetricTable(boolean enabled){
+        this.symmetricTable = enabled;
+    }
+
+    /**
+     * Enables or disables pondering. After decideMove returns a move, a pondering Minimax goes on
+     * searching, on a background thread, the position after that move and the reply it expects
+     * (the best reply stored in the transposition table). If the next call to decideMove is for that
+     * position (a ponder hit), the search carries on as if it had started when pondering did: with
+     * the rest of the time budget, or none if the opponent took longer than the budget, in which
+     * case the move of the deepest iteration completed so far is returned at once. Otherwise (a miss)
+     * it is stopped, and the position is searched as usual, with the table filled by the ponder search.
+     *
+     * The settings of a pondering Minimax must not be changed between moves. The ponder search ends
+     * at the depth limit, or when stopPondering is called, which gameOver does.
+     */
+    public void setPondering(boolean enabled){
+        if (!enabled) {
+            stopPondering();
+        }
+        this.ponder = enabled;
+    }
+
+    /**
+     * Stops the ponder search, if there is one, and waits for it to end. Called by gameOver.
+     */
+    public void stopPondering(){
+        if (ponderResult != null) {
+            stopSearch();
+            awaitPonderResult();
+            ponderStats = null;
+            ponderEvent = null;
+        }
+    }
+
+    /**
+     * Returns the number of moves answered from a ponder search.
+     */
+    public int getPonderHits(){
+        return ponderHits;
+    }
+
+    /**
+     * Returns the number of ponder searches discarded because the opponent played another move.
+     */
+    public int getPonderMisses(){
+        return ponderMisses;
+    }
+
+    /**
+     * Returns the fraction of ponder searches whose position came up, or 0 if there were none.
+     */
+    public double getPonderHitRate(){
+        int ponders = ponderHits + ponderMisses;
+        return ponders == 0 ? 0 : (double) ponderHits / ponders;
+    }
+
+    /**
+     * Returns the number of nodes visited by the last call to decideMove, on all threads.
+     */
+    public long getNodeCount(){
+        return lastStats.getNodes();
+    }
+
+    /**
+     * Returns the statistics of the last call to decideMove, merged over all threads. They are
+     * also emitted as a JFR event (see SearchEvent) after every call.
+     */
+    public SearchStats getStats(){
+        return lastStats;
+    }
+
+    /**
+     * Returns the depth of the deepest completed iteration of the last call to decideMove.
+     */
+    public int getCompletedDepth(){
+        return lastStats.getDepth();
+    }
+
+    /**
+     * Makes a running decideMove return as soon as possible. With a time budget or an aspiration
+     * window it returns the move of the deepest completed iteration; a search to a fixed depth has
+     * none, so it returns the best move by the utility of its square. This includes an endgame
+     * solve, which is given up. Safe to call from any thread.
+     */
+    @Override
+    public void stopSearch(){
+        stopRequested = true;
+    }
+
+    /**
+     * Stops pondering; see stopPondering.
+     */
+    @Override
+    public void gameOver(){
+        stopPondering();
+    }
+
+    /**
+     * Returns the depth of the iteration being searched, or the number of empty squares being solved.
+     */
+    @Override
+    public int getSearchDepth(){
+        return searchDepth;
+    }
+
+    /**
+     * Returns the number of nodes visited so far by the running call to decideMove, or by the last
+     * one. The counters of the search threads are read without synchronisation, so while a search
+     * runs the count is only approximate.
+     */
+    @Override
+    public long getSearchNodes(){
+        long nodes = stats.nodes;
+        if (allWorkers != null) {
+            for (Minimax worker : allWorkers) {
+                nodes += worker.stats.nodes;
+            }
+        }
+        return nodes;
+    }
+
+    /**
+     * Returns the transposition table, e.g. to read its probe and hit counts, or null if there is none.
+     */
+    public TranspositionTable getTranspositionTable(){
+        return transpositionTable;
     }
 
     /**
      * Determines the best move using Minimax with Alpha-Beta pruning.
+     * Searches to the depth limit, or by iterative deepening if a time budget is set.
+     * With few enough empty squares left the game is solved exactly instead (see setEndgameThreshold).
      *
      * @param s The current game state.
      * @return The best position for the AI's move.
      */
     @Override
     public Position decideMove(GameState s) { 
-        ArrayList<Position> legalMoves = s.legalMoves();
-        sortMovesByValue(legalMoves);
+        Position move = ponderResult != null ? finishPondering(s) : null;
+        if (move == null) {
+            long start = System.nanoTime();
+            stopRequested = false; // A stopSearch before this point is for an earlier search
+            clockStart = start;
+            deadline = start + timeBudget * 1_000_000;
+            move = search(s, false);
+        }
+        if (ponder) {
+            startPondering(s, move);
+        }
+        return move;
+    }
+
+    /**
+     * Searches a position and keeps its statistics, for decideMove or as a ponder search. The
+     * statistics of a ponder hit cover the whole ponder search.
+     */
+    private Position search(GameState s, boolean ponderSearch) {
+        SearchEvent event = SearchEvent.start();
+        long start = System.nanoTime();
+        stats.reset();
+        clearKillers();
+        ageHistory();
+        if (allWorkers != null) {
+            for (Minimax worker : allWorkers) {
+                worker.stats.reset();
+                worker.clearKillers();
+                worker.ageHistory();
+            }
+        }
+        Position move = chooseMove(s);
+
+        SearchStats merged = new SearchStats();
+        merged.add(stats);
+        if (allWorkers != null) {
+            for (Minimax worker : allWorkers) {
+                merged.add(worker.stats);
+            }
+        }
+        merged.depth = completedDepth;
+        merged.solved = stats.solved;
+        merged.nanos = System.nanoTime() - start;
+        if (ponderSearch) { // Kept apart, so the statistics of the last move stay readable while pondering
+            ponderStats = merged;
+            ponderEvent = event;
+        } else {
+            lastStats = merged;
+            event.finish(merged);
+        }
+        return move;
+    }
+
+    /**
+     * The search behind decideMove, counting into the statistics of this instance and its workers.
+     */
+    private Position chooseMove(GameState s) {
+        GameState state = s.copy(); // Searched by making and unmaking moves, so the caller's state is left untouched
+        int[] legalMoves = moveBuffers[depthLimit + 1];
+        int moveCount = state.legalMoves(legalMoves);
+        if (moveCount == 0) {
+            completedDepth = 0;
+            return new Position(-1, -1);
+        }
+        sortMovesByValue(legalMoves, moveCount);
+
+        int[] tokens = s.countTokens();
+        int emptySquares = size * size - tokens[0] - tokens[1];
+        if (emptySquares <= endgameEmpties) {
+            if (endgameSolver == null) {
+                endgameSolver = new EndgameSolver(size);
+            }
+            long solverNodes = endgameSolver.getNodeCount();
+            searchDepth = emptySquares;
+            timed = timeBudget > 0 && !pondering;
+            int move = endgameSolver.bestMove(state, legalMoves, moveCount, this::endgameOutOfTime);
+            timed = false;
+            stats.nodes += endgameSolver.getNodeCount() - solverNodes;
+            if (move >= 0) {
+                stats.solved = true;
+                completedDepth = emptySquares;
+                return s.toPosition(move);
+            }
+            // Out of time or stopped: the heuristic search below finds a move with what is left
+        }
 
         int player = s.getPlayerInTurn();
-        int value = Integer.MIN_VALUE;
-        Position bestMove = null;
-        int alpha = Integer.MIN_VALUE;
-        int beta = Integer.MAX_VALUE;
+        if (transpositionTable != null) {
+            if (player != tablePlayer) { // Stored values are relative to the other player
+                transpositionTable.clear();
+                tablePlayer = player;
+            }
+            transpositionTable.newSearch();
+        }
+
+        if (timeBudget <= 0 && aspirationWindow <= 0) {
+            completedDepth = depthLimit;
+            int move = searchRoot(state, player, legalMoves, moveCount, depthLimit, Integer.MIN_VALUE, Integer.MAX_VALUE);
+            if (aborted || move < 0) { // Stopped by stopSearch
+                aborted = false;
+                stopRequested = false;
+                completedDepth = 0;
+                move = legalMoves[0];
+            }
+            return s.toPosition(move);
+        }
+
+        int bestMove = legalMoves[0];
+        completedDepth = 0;
+        int[] iterationValues = new int[depthLimit + 1];
+        for (int depth = 0; depth <= depthLimit; depth++) {
+            timed = timeBudget > 0 && depth > 0 && !pondering; // The shallowest iteration always completes, so there is a move to return
+            int move;
+            if (aspirationWindow > 0 && depth > 0) {
+                // The value swings between odd and even depths, as the side that moved last gains tokens,
+                // so the window is centred on the last iteration of the same parity
+                int previousValue = iterationValues[depth >= 2 ? depth - 2 : depth - 1];
+                int alpha = previousValue - aspirationWindow;
+                int beta = previousValue + aspirationWindow;
+                move = searchRoot(state, player, legalMoves, moveCount, depth, alpha, beta);
+                if (!aborted && !stopRequested && (rootValue <= alpha || rootValue >= beta)) {
+                    stats.researches++; // The value is outside the window, so only a bound on it is known
+                    move = searchRoot(state, player, legalMoves, moveCount, depth, Integer.MIN_VALUE, Integer.MAX_VALUE);
+                }
+            } else {
+                move = searchRoot(state, player, legalMoves, moveCount, depth, Integer.MIN_VALUE, Integer.MAX_VALUE);
+            }
+            if (aborted || stopRequested) {
+                break;
+            }
+            bestMove = move;
+            completedDepth = depth;
+            iterationValues[depth] = rootValue;
+            moveToFront(legalMoves, moveCount, bestMove); // The principal variation is searched first next time
+
+            long elapsed = System.nanoTime() - clockStart;
+            if (depth + 1 >= emptySquares || (timeBudget > 0 && !pondering && elapsed > timeBudget * 1_000_000 / 2)) {
+                break; // The game is searched to the end, or the next iteration would hardly have time to finish
+            }
+        }
+        timed = false;
+        aborted = false;
+        stopRequested = false;
+        return s.toPosition(bestMove);
+    }
+
+    /**
+     * Tells the endgame solver to give up: when stopSearch was called, or when a timed search has
+     * used a quarter of its budget, so that the heuristic search still has time for a few iterations.
+     */
+    private boolean endgameOutOfTime() {
+        return stopRequested || (timed && System.nanoTime() - clockStart > timeBudget * 1_000_000 / 4);
+    }
+
+    /**
+     * Starts pondering the position after the given move and the reply the search expects: the
+     * best move stored in the table for the position after the move, or else the best by the
+     * utility of its square. If the opponent has to pass, the position after the pass is pondered.
+     * Does nothing if the game ends, or the AI would have to pass.
+     */
+    private void startPondering(GameState s, Position move) {
+        GameState next = s.copy();
+        if (!next.insertToken(move)) {
+            return;
+        }
+        int[] moves = new int[size * size];
+        int moveCount = next.legalMoves(moves);
+        if (moveCount == 0) {
+            next.changePlayer();
+        } else {
+            int symmetry = tableSymmetry(next);
+            long key = symmetry == Symmetry.IDENTITY ? next.getHash() : next.transformedHash(symmetry);
+            long entry = transpositionTable == null ? 0 : transpositionTable.probe(key);
+            int reply = symmetries.inverse(symmetry, TranspositionTable.move(entry));
+            sortMovesByValue(moves, moveCount);
+            int expected = moves[0];
+            for (int i = 0; i < moveCount; i++) {
+                if (moves[i] == reply) {
+                    expected = reply;
+                }
+            }
+            next.insertToken(expected);
+        }
+        if (!next.hasLegalMove(next.getPlayerInTurn())) {
+            return;
+        }
+        ponderState = next;
+        stopRequested = false; // Here rather than in the ponder thread, so a stopSearch right after this is not lost
+        pondering = true;
+        ponderStart = System.nanoTime();
+        ponderResult = ponderThreads.submit(() -> search(next, true));
+    }
+
+    /**
+     * Ends pondering when decideMove is called. On a ponder hit the ponder search gets the time
+     * budget counted from the start of pondering and its move is returned; on a miss it is stopped
+     * and null is returned.
+     */
+    private Position finishPondering(GameState s) {
+        boolean hit = s.getPlayerInTurn() == ponderState.getPlayerInTurn() && s.getHash() == ponderState.getHash()
+                && Arrays.deepEquals(s.getBoard(), ponderState.getBoard());
+        if (hit) {
+            ponderHits++;
+            clockStart = ponderStart;
+            deadline = ponderStart + timeBudget * 1_000_000;
+            pondering = false; // After the clock is set, as the ponder search reads the clock once it sees this
+            timed = timeBudget > 0;
+        } else {
+            ponderMisses++;
+            stopSearch();
+        }
+        Position move = awaitPonderResult();
+        SearchStats pondered = ponderStats; // Set by the ponder search when it ended
+        SearchEvent event = ponderEvent;
+        ponderStats = null;
+        ponderEvent = null;
+        if (!hit) {
+            return null;
+        }
+        pondered.ponderHit = true;
+        lastStats = pondered;
+        event.finish(pondered);
+        return move;
+    }
 
-        for (Position move : legalMoves) {
-            GameState nextState = new GameState(s.getBoard(), s.getPlayerInTurn());
-            nextState.insertToken(move);
+    /**
+     * Waits for the ponder search to end and returns its move. Its statistics are then in lastStats.
+     */
+    private Position awaitPonderResult() {
+        try {
+            return ponderResult.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the ponder search", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Ponder search failed", e.getCause());
+        } finally {
+            ponderResult = null;
+            ponderState = null;
+            pondering = false;
+        }
+    }
+
+    /**
+     * Searches the legal moves of the root to the given depth with the window (alpha, beta), in the
+     * order given, on the pool if the search is parallel. The value of the root is left in rootValue;
+     * if it is outside the window it is only a bound, and the move returned is not reliable.
+     *
+     * @return The best move, or an unusable result if the search was aborted.
+     */
+    private int searchRoot(GameState state, int player, int[] legalMoves, int moveCount, int depth, int alpha, int beta) {
+        rootDepth = depth;
+        searchDepth = depth;
+        if (pool == null) {
+            return searchRootMoves(state, player, legalMoves, moveCount, depth, alpha, beta);
+        }
+        return pool.invoke(ForkJoinTask.adapt(() -> searchRootMoves(state, player, legalMoves, moveCount, depth, alpha, beta)));
+    }
 
-            int moveValue = minValue(nextState, player, depthLimit, alpha, beta);
+    private int searchRootMoves(GameState state, int player, int[] legalMoves, int moveCount, int depth, int alpha, int beta) {
+        int value = Integer.MIN_VALUE;
+        int bestMove = -1;
 
-            if (moveValue > value || bestMove == null) {
+        for (int i = 0; i < moveCount; i++) {
+            if (i > 0 && pool != null) {
+                // Ties are searched exactly, so the first of equally good moves wins as in the serial search
+                Split siblings = searchSiblings(state, player, depth, legalMoves, i, moveCount, alpha, beta, true, true);
+                if (siblings == null) {
+                    return -1;
+                }
+                for (int j = i; j < moveCount; j++) {
+                    if (siblings.completed[j] && siblings.values[j] > value) {
+                        value = siblings.values[j];
+                        bestMove = legalMoves[j];
+                    }
+                }
+                break;
+            }
+            state.applyMove(legalMoves[i]);
+            int moveValue = i == 0 ? minValue(state, player, depth, alpha, beta)
+                                   : minValueOfLaterMove(state, player, depth, alpha, beta);
+            state.undoMove();
+            if (aborted) {
+                return -1;
+            }
+
+            if (moveValue > value || bestMove == -1) {
                 value = moveValue;
-                bestMove = move;
+                bestMove = legalMoves[i];
                 alpha = Math.max(alpha, value);
             }
+            if (value >= beta) {
+                break; // Above an aspiration window; the root is searched again
+            }
         }
+        rootValue = value;
         return bestMove;
     }
 
@@ -55,6 +689,7 @@ public class Minimax implements IOthelloAI {
      * Evaluates the maximum possible utility value for the AI player.
      * This function recursively calls `minValue()` to explore possible opponent responses.
      * Uses Alpha-Beta pruning to optimize the search.
+     * Moves are made and unmade on the given state, which is unchanged when the method returns.
      *
      * @param s The current game state.
      * @param player The AI player (1 or 2).
@@ -64,27 +699,78 @@ public class Minimax implements IOthelloAI {
      * @return The maximum utility value for the given state.
      */
     public int maxValue(GameState s, int player, int depth, int alpha, int beta){
-        if (depth == 0 || s.isFinished()) {
+        if (isOutOfTime()) {
+            return 0;
+        }
+        if (depth == 0) {
+            stats.evaluations++;
             return evaluateBoard(s, player);
         }
+        int[] legalMoves = moveBuffers[depth];
+        int moveCount = s.legalMoves(legalMoves);
+        if (s.isFinished(moveCount)) {
+            stats.evaluations++;
+            return evaluateBoard(s, player);
+        }
+        if (moveCount == 0) { // The AI player has to pass, which counts as a ply
+            s.applyPass();
+            int value = minValue(s, player, depth - 1, alpha, beta);
+            s.undoMove();
+            return value;
+        }
+        int symmetry = tableSymmetry(s);
+        long key = symmetry == Symmetry.IDENTITY ? s.getHash() : s.transformedHash(symmetry);
+        long entry = probe(key);
+        if (entry != 0 && isCutoff(entry, depth, alpha, beta)) {
+            stats.tableCutoffs++;
+            return TranspositionTable.value(entry);
+        }
+        stats.interiorNodes++;
+        int alphaOriginal = alpha;
         int value = Integer.MIN_VALUE;
+        int bestMove = -1;
 
-        ArrayList<Position> legalMoves = s.legalMoves();
-        sortMovesByValue(legalMoves);
-
-        for (Position position : legalMoves) {
-            GameState nexState = new GameState(s.getBoard(), s.getPlayerInTurn());
-            nexState.insertToken(position);
+        int[] scores = scoreBuffers[depth];
+        int ply = master.rootDepth - depth;
+        scoreMoves(legalMoves, scores, moveCount, symmetries.inverse(symmetry, TranspositionTable.move(entry)), ply, 0);
 
-            int moveValue = minValue(nexState, player, depth -1, alpha, beta);
-            value = Math.max(value, moveValue);
+        for (int i = 0; i < moveCount; i++) {
+            if (i > 0 && canSplit(depth)) {
+                sortMoves(legalMoves, scores, i, moveCount);
+                Split siblings = searchSiblings(s, player, depth - 1, legalMoves, i, moveCount, alpha, beta, true, false);
+                if (siblings == null) {
+                    return 0;
+                }
+                for (int j = i; j < moveCount; j++) {
+                    if (siblings.completed[j] && siblings.values[j] > value) {
+                        value = siblings.values[j];
+                        bestMove = legalMoves[j];
+                    }
+                }
+                break;
+            }
+            selectMove(legalMoves, scores, i, moveCount);
+            s.applyMove(legalMoves[i]);
+            int moveValue = i == 0 ? minValue(s, player, depth -1, alpha, beta)
+                                   : minValueOfLaterMove(s, player, depth - 1, alpha, beta);
+            s.undoMove();
+            if (aborted) {
+                return 0;
+            }
+            if (moveValue > value || bestMove == -1) {
+                value = moveValue;
+                bestMove = legalMoves[i];
+            }
 
             if(value >= beta){
-                return value; // Beta cutoff
+                countCutoff(i);
+                recordCutoff(legalMoves[i], ply, 0, depth);
+                break; // Beta cutoff
             }
 
             alpha = Math.max(alpha, value);
         }
+        store(key, value, depth, alphaOriginal, beta, symmetries.transform(symmetry, bestMove));
         return value;
     }
 
@@ -92,6 +778,7 @@ public class Minimax implements IOthelloAI {
      * Evaluates the minimum possible utility value for the opponent.
      * This function recursively calls `maxValue()` to explore possible AI responses.
      * Uses Alpha-Beta pruning to optimize the search.
+     * Moves are made and unmade on the given state, which is unchanged when the method returns.
      *
      * @param s The current game state.
      * @param player The AI player (1 or 2).
@@ -101,76 +788,504 @@ public class Minimax implements IOthelloAI {
      * @return The minimum utility value for the given state.
      */
     public int minValue(GameState s, int player, int depth, int alpha, int beta){
-        if (depth == 0 || s.isFinished()) {
+        if (isOutOfTime()) {
+            return 0;
+        }
+        if (depth == 0) {
+            stats.evaluations++;
             return evaluateBoard(s, player); 
         }
+        int[] legalMoves = moveBuffers[depth];
+        int moveCount = s.legalMoves(legalMoves);
+        if (s.isFinished(moveCount)) {
+            stats.evaluations++;
+            return evaluateBoard(s, player);
+        }
+        if (moveCount == 0) { // The opponent has to pass, which counts as a ply
+            s.applyPass();
+            int value = maxValue(s, player, depth - 1, alpha, beta);
+            s.undoMove();
+            return value;
+        }
         
+        int symmetry = tableSymmetry(s);
+        long key = symmetry == Symmetry.IDENTITY ? s.getHash() : s.transformedHash(symmetry);
+        long entry = probe(key);
+        if (entry != 0 && isCutoff(entry, depth, alpha, beta)) {
+            stats.tableCutoffs++;
+            return TranspositionTable.value(entry);
+        }
+        stats.interiorNodes++;
+        int betaOriginal = beta;
         int value = Integer.MAX_VALUE;
+        int bestMove = -1;
 
-        ArrayList<Position> legalMoves = s.legalMoves();
-        sortMovesByValue(legalMoves);
-
-        for (Position position : legalMoves) {
-            GameState nextState = new GameState(s.getBoard(), s.getPlayerInTurn());
-            nextState.insertToken(position);
+        int[] scores = scoreBuffers[depth];
+        int ply = master.rootDepth - depth;
+        scoreMoves(legalMoves, scores, moveCount, symmetries.inverse(symmetry, TranspositionTable.move(entry)), ply, 1);
 
-            int moveValue = maxValue(nextState, player, depth -1, alpha, beta);
-            value = Math.min(value, moveValue);
+        for (int i = 0; i < moveCount; i++) {
+            if (i > 0 && canSplit(depth)) {
+                sortMoves(legalMoves, scores, i, moveCount);
+                Split siblings = searchSiblings(s, player, depth - 1, legalMoves, i, moveCount, alpha, beta, false, false);
+                if (siblings == null) {
+                    return 0;
+                }
+                for (int j = i; j < moveCount; j++) {
+                    if (siblings.completed[j] && siblings.values[j] < value) {
+                        value = siblings.values[j];
+                        bestMove = legalMoves[j];
+                    }
+                }
+                break;
+            }
+            selectMove(legalMoves, scores, i, moveCount);
+            s.applyMove(legalMoves[i]);
+            int moveValue = i == 0 ? maxValue(s, player, depth -1, alpha, beta)
+                                   : maxValueOfLaterMove(s, player, depth - 1, alpha, beta);
+            s.undoMove();
+            if (aborted) {
+                return 0;
+            }
+            if (moveValue < value || bestMove == -1) {
+                value = moveValue;
+                bestMove = legalMoves[i];
+            }
 
             if(value <= alpha){
-                return value; // Alpha cutoff
+                countCutoff(i);
+                recordCutoff(legalMoves[i], ply, 1, depth);
+                break; // Alpha cutoff
             }
 
             beta = Math.min(beta, value);
         }
+        store(key, value, depth, alpha, betaOriginal, symmetries.transform(symmetry, bestMove));
         return value;
     }
 
+    /**
+     * Searches a move of a max node other than the first. With PVS it is searched with a null window
+     * first, proving that it is at most alpha, and only searched again with the full window if it
+     * turns out better than alpha (and below beta, otherwise it causes a cutoff anyway).
+     *
+     * @param s The state after the move.
+     */
+    private int minValueOfLaterMove(GameState s, int player, int depth, int alpha, int beta) {
+        if (!master.principalVariation || alpha == Integer.MIN_VALUE) {
+            return minValue(s, player, depth, alpha, beta);
+        }
+        int value = minValue(s, player, depth, alpha, alpha + 1);
+        if (!aborted && value > alpha && value < beta) {
+            stats.researches++;
+            value = minValue(s, player, depth, alpha, beta);
+        }
+        return value;
+    }
+
+    /**
+     * Searches a move of a min node other than the first, like minValueOfLaterMove with the
+     * null window (beta - 1, beta).
+     *
+     * @param s The state after the move.
+     */
+    private int maxValueOfLaterMove(GameState s, int player, int depth, int alpha, int beta) {
+        if (!master.principalVariation || beta == Integer.MAX_VALUE) {
+            return maxValue(s, player, depth, alpha, beta);
+        }
+        int value = maxValue(s, player, depth, beta - 1, beta);
+        if (!aborted && value < beta && value > alpha) {
+            stats.researches++;
+            value = maxValue(s, player, depth, alpha, beta);
+        }
+        return value;
+    }
+
+    /**
+     * Counts a visited node and checks every 1024 nodes whether the deadline of a timed search has
+     * passed, or whether a sibling in a parallel search made the work of this worker unnecessary.
+     *
+     * @return true if the search has been aborted and should unwind immediately.
+     */
+    private boolean isOutOfTime() {
+        if ((++stats.nodes & 1023) == 0) {
+            if (master.timed && System.nanoTime() - master.deadline > 0) {
+                master.stopRequested = true;
+            }
+            if (master.stopRequested || hasCutoff(split)) {
+                aborted = true;
+            }
+        }
+        return aborted;
+    }
+
+    private void countCutoff(int moveIndex) {
+        stats.cutoffs++;
+        if (moveIndex == 0) {
+            stats.firstMoveCutoffs++;
+        }
+    }
+
+    /**
+     * Remembers a move that caused a cutoff: as the first killer of its ply, and in the history
+     * table, weighted by the square of the remaining depth so cutoffs near the root count most.
+     *
+     * @param side 0 if the move was made by the AI player, 1 if by the opponent.
+     */
+    private void recordCutoff(int move, int ply, int side, int depth) {
+        if (ply < 0) {
+            return; // A cutoff among the root moves, which keep their own order
+        }
+        int[] plyKillers = killers[ply];
+        if (plyKillers[0] != move) {
+            plyKillers[1] = plyKillers[0];
+            plyKillers[0] = move;
+        }
+        int[] sideHistory = history[side];
+        sideHistory[move] += depth * depth;
+        if (sideHistory[move] >= HISTORY_LIMIT) {
+            ageHistory();
+        }
+    }
+
+    private void clearKillers() {
+        for (int[] plyKillers : killers) {
+            plyKillers[0] = -1;
+            plyKillers[1] = -1;
+        }
+    }
+
+    /**
+     * Halves the history table, so cutoffs from earlier searches weigh less than recent ones.
+     */
+    private void ageHistory() {
+        for (int[] sideHistory : history) {
+            for (int i = 0; i < sideHistory.length; i++) {
+                sideHistory[i] >>= 1;
+            }
+        }
+    }
+
+    /**
+     * Checks whether a split node can search the younger brothers at this remaining depth in parallel.
+     */
+    private boolean canSplit(int depth) {
+        return master.pool != null && depth >= master.splitDepth;
+    }
+
+    /**
+     * Checks whether the given split, or any split it is nested in, has had a cutoff.
+     */
+    private static boolean hasCutoff(Split split) {
+        for (Split sp = split; sp != null; sp = sp.parent) {
+            if (sp.cutoff) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Searches moves[from] to moves[count - 1] of the given state in parallel, once the eldest brother
+     * has been searched and has set alpha (at a max node) or beta (at a min node).
+     *
+     * @param depth The remaining depth of the children.
+     * @param maximizing Whether the moves are made by the AI player, i.e. the children are searched with minValue.
+     * @param exactTies Whether children equal to the best so far must get exact values, as needed at the root.
+     * @return The split holding the values of the children that completed, or null if this worker has to abort.
+     */
+    private Split searchSiblings(GameState s, int player, int depth, int[] moves, int from, int count,
+                                 int alpha, int beta, boolean maximizing, boolean exactTies) {
+        Split siblings = new Split(split, maximizing, maximizing ? alpha : beta, maximizing ? beta : alpha, count);
+        SiblingSearch[] tasks = new SiblingSearch[count - from];
+        for (int i = from; i < count; i++) {
+            tasks[i - from] = new SiblingSearch(siblings, s, moves[i], i, player, depth, exactTies);
+        }
+        ForkJoinTask.invokeAll(tasks);
+        if (master.stopRequested || hasCutoff(split)) {
+            aborted = true;
+            return null;
+        }
+        return siblings;
+    }
+
+    private Minimax acquireWorker() {
+        Minimax worker = master.idleWorkers.poll();
+        if (worker == null) {
+            worker = new Minimax(master);
+            master.allWorkers.add(worker);
+        }
+        return worker;
+    }
+
+    /**
+     * A node whose younger brothers are being searched in parallel.
+     */
+    private static final class Split {
+        final Split parent;          // The split the node itself is searched under, or null
+        final boolean maximizing;
+        final AtomicInteger bound;   // Alpha at a max node, beta at a min node; tightened as siblings complete
+        final int otherBound;        // Beta at a max node, alpha at a min node
+        volatile boolean cutoff;     // Set when a sibling made the remaining ones unnecessary
+        final int[] values;          // Value of each completed child, indexed like the move list
+        final boolean[] completed;
+
+        Split(Split parent, boolean maximizing, int bound, int otherBound, int moveCount) {
+            this.parent = parent;
+            this.maximizing = maximizing;
+            this.bound = new AtomicInteger(bound);
+            this.otherBound = otherBound;
+            this.values = new int[moveCount];
+            this.completed = new boolean[moveCount];
+        }
+    }
+
+    /**
+     * Searches one younger brother of a split node on a borrowed worker.
+     */
+    private final class SiblingSearch extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final Split split;
+        private final GameState parentState;
+        private final int move;
+        private final int index;
+        private final int player;
+        private final int depth;
+        private final boolean exactTies;
+
+        SiblingSearch(Split split, GameState parentState, int move, int index, int player, int depth, boolean exactTies) {
+            this.split = split;
+            this.parentState = parentState;
+            this.move = move;
+            this.index = index;
+            this.player = player;
+            this.depth = depth;
+            this.exactTies = exactTies;
+        }
+
+        @Override
+        protected void compute() {
+            if (master.stopRequested || hasCutoff(split)) {
+                return;
+            }
+            Minimax worker = acquireWorker();
+            worker.split = split;
+            GameState state = parentState.copy();
+            state.applyMove(move);
+            int value;
+            if (split.maximizing) {
+                int alpha = split.bound.get();
+                if (exactTies && alpha != Integer.MIN_VALUE) {
+                    alpha--;
+                }
+                value = worker.minValueOfLaterMove(state, player, depth, alpha, split.otherBound);
+                if (!worker.aborted) {
+                    split.bound.accumulateAndGet(value, Math::max);
+                    if (value >= split.otherBound) {
+                        split.cutoff = true;
+                        worker.countCutoff(index);
+                        worker.recordCutoff(move, master.rootDepth - depth - 1, 0, depth + 1);
+                    }
+                }
+            } else {
+                int beta = split.bound.get();
+                value = worker.maxValueOfLaterMove(state, player, depth, split.otherBound, beta);
+                if (!worker.aborted) {
+                    split.bound.accumulateAndGet(value, Math::min);
+                    if (value <= split.otherBound) {
+                        split.cutoff = true;
+                        worker.countCutoff(index);
+                        worker.recordCutoff(move, master.rootDepth - depth - 1, 1, depth + 1);
+                    }
+                }
+            }
+            if (!worker.aborted) {
+                split.values[index] = value;
+                split.completed[index] = true;
+            }
+            worker.aborted = false;
+            worker.split = null;
+            master.idleWorkers.offer(worker);
+        }
+    }
+
+    /**
+     * Returns the transformation to the form a position is stored in the transposition table by:
+     * its canonical form if the table is symmetric, otherwise the position as it is.
+     */
+    private int tableSymmetry(GameState s) {
+        if (!master.symmetricTable || transpositionTable == null) {
+            return Symmetry.IDENTITY;
+        }
+        return s.canonicalSymmetry();
+    }
+
+    /**
+     * Looks up a position in the transposition table.
+     *
+     * @param key The hash of the position in the form it is stored by (see tableSymmetry).
+     * @return The table entry, or 0 if there is no table or no entry for the state.
+     */
+    private long probe(long key) {
+        if (transpositionTable == null) {
+            return 0;
+        }
+        stats.tableProbes++;
+        long entry = transpositionTable.probe(key);
+        if (entry != 0) {
+            stats.tableHits++;
+        }
+        return entry;
+    }
+
+    /**
+     * Checks whether a table entry settles the value of a node without searching it. Only entries
+     * searched to exactly the remaining depth are used, so the table never changes the move chosen
+     * at a given depth, only how fast it is found.
+     */
+    private boolean isCutoff(long entry, int depth, int alpha, int beta) {
+        if (TranspositionTable.depth(entry) != depth) {
+            return false;
+        }
+        int value = TranspositionTable.value(entry);
+        switch (TranspositionTable.bound(entry)) {
+            case TranspositionTable.EXACT:
+                return true;
+            case TranspositionTable.LOWER:
+                return value >= beta;
+            default:
+                return value <= alpha;
+        }
+    }
+
+    /**
+     * Stores the result of searching a node with the window (alpha, beta) in the transposition table,
+     * under the given key and with the best move in the same form as the key.
+     */
+    private void store(long key, int value, int depth, int alpha, int beta, int bestMove) {
+        if (transpositionTable == null) {
+            return;
+        }
+        int bound = value <= alpha ? TranspositionTable.UPPER
+                  : value >= beta ? TranspositionTable.LOWER
+                  : TranspositionTable.EXACT;
+        transpositionTable.store(key, value, depth, bound, bestMove);
+    }
+
+    /**
+     * Moves the given move to the front of the move list, keeping the order of the others.
+     * Does nothing if the move is not in the list.
+     */
+    private void moveToFront(int[] moves, int count, int move) {
+        for (int i = 0; i < count; i++) {
+            if (moves[i] == move) {
+                for (int j = i; j > 0; j--) {
+                    moves[j] = moves[j - 1];
+                }
+                moves[0] = move;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Gives every move its ordering score: the hash move highest, then the two killers of the ply,
+     * then the moves by their history, with the square utility breaking ties.
+     *
+     * @param hashMove The best move stored in the transposition table, or -1.
+     * @param side 0 if the moves are made by the AI player, 1 if by the opponent.
+     */
+    private void scoreMoves(int[] moves, int[] scores, int count, int hashMove, int ply, int side) {
+        int killer0 = killers[ply][0];
+        int killer1 = killers[ply][1];
+        int[] sideHistory = history[side];
+        for (int i = 0; i < count; i++) {
+            int move = moves[i];
+            if (move == hashMove) {
+                scores[i] = HASH_MOVE_SCORE;
+            } else if (move == killer0) {
+                scores[i] = KILLER_SCORE;
+            } else if (move == killer1) {
+                scores[i] = KILLER_SCORE - 1;
+            } else {
+                scores[i] = (sideHistory[move] << 5) + utilityTable.squareUtility(move) + 16;
+            }
+        }
+    }
+
+    /**
+     * Swaps the highest scored of moves[from] to moves[count - 1] into moves[from]. Selecting the
+     * moves one at a time as the search reaches them does no work for the moves a cutoff skips.
+     */
+    private static void selectMove(int[] moves, int[] scores, int from, int count) {
+        int best = from;
+        for (int i = from + 1; i < count; i++) {
+            if (scores[i] > scores[best]) {
+                best = i;
+            }
+        }
+        if (best != from) {
+            int move = moves[best];
+            moves[best] = moves[from];
+            moves[from] = move;
+            int score = scores[best];
+            scores[best] = scores[from];
+            scores[from] = score;
+        }
+    }
+
+    /**
+     * Orders moves[from] to moves[count - 1] by descending score, e.g. before they are searched in parallel.
+     */
+    private static void sortMoves(int[] moves, int[] scores, int from, int count) {
+        for (int i = from; i < count - 1; i++) {
+            selectMove(moves, scores, i, count);
+        }
+    }
+
     /**
      * Evaluates the utility of a given game state.
      * The evaluation considers both:
      * - The number of tokens controlled by the AI.
      * - The positional value of occupied board positions based on `Utility`.
+     * If a pattern evaluator is set (see setEvaluator), it evaluates the state instead.
      *
      * @param s The current game state.
      * @param player The AI player (1 or 2).
      * @return The heuristic value of the board state.
      */
-    private int evaluateBoard(GameState s, int player) {
-        Utility utilityTable = new Utility(s);
-        int[] tokenCounts = s.countTokens();
-        int playerTokens = (player == 1) ? tokenCounts[0] : tokenCounts[1];
-        int opponentTokens = (player == 1) ? tokenCounts[1] : tokenCounts[0];
-    
-        int positionalScore = 0;
-        int[][] board = s.getBoard();
-    
-        // Loop through board and sum up utility values for player's and opponent's tokens
-        for (int i = 0; i < board.length; i++) {
-            for (int j = 0; j < board[i].length; j++) {
-                Position p = new Position(i, j);
-                if (board[i][j] == player) {
-                    positionalScore += utilityTable.moveUtility(p); // Add for AI player
-                } else if (board[i][j] != 0) { // If opponent has a token there
-                    positionalScore -= utilityTable.moveUtility(p); // Subtract for opponent
-                }
-            }
+    int evaluateBoard(GameState s, int player) {
+        if (patternEvaluator != null) {
+            return patternEvaluator.evaluate(s, player);
         }
+        int playerTokens = s.countTokens(player);
+        int opponentTokens = s.countTokens(player == 1 ? 2 : 1);
+    
+        // Utility values of the player's tokens minus those of the opponent's tokens
+        int positionalScore = s.positionalScore(player, utilityTable);
     
         return (playerTokens - opponentTokens) * 6 + positionalScore;
     }
 
     /**
      * Sorts legal moves in descending order based on their strategic value.
-     * This helps Alpha-Beta pruning by prioritizing strong moves earlier.
+     * Used at the root, where the order of equally valued moves decides which one is played;
+     * inner nodes are ordered by scoreMoves instead.
+     * Uses a stable insertion sort, as move lists are short and this avoids boxing.
      *
-     * @param moves The list of available moves.
+     * @param moves The buffer of available moves, as square indices.
+     * @param count The number of moves in the buffer.
      */
-    private void sortMovesByValue(ArrayList<Position> moves) {
-        moves.sort((p1, p2) -> {
-            int value1 = utilityTable.moveUtility(p1);
-            int value2 = utilityTable.moveUtility(p2);
-            return Integer.compare(value2, value1); // Higher value first
-        });
+    private void sortMovesByValue(int[] moves, int count) {
+        for (int i = 1; i < count; i++) {
+            int move = moves[i];
+            int value = utilityTable.squareUtility(move);
+            int j = i - 1;
+            while (j >= 0 && utilityTable.squareUtility(moves[j]) < value) { // Higher value first
+                moves[j + 1] = moves[j];
+                j--;
+            }
+            moves[j + 1] = move;
+        }
     }
 }
@@ -0,0 +1,238 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An opening book: the move to play in positions near the start of the game, searched deeply
+ * offline, so an AI can answer them instantly instead of searching.
+ *
+ * Positions are keyed by the Zobrist hash of their canonical form (see GameState.canonicalHash),
+ * which is the same for all 8 rotations and reflections of the board. The move is stored for that
+ * form and mapped back to the board it was asked for, so one entry serves all mirrored positions.
+ *
+ * The file holds a 16 byte header (magic, board size, entry count, search depth), the keys
+ * sorted ascending as longs, and then the moves in the same order as shorts. Lookups binary
+ * search the keys in a read-only memory mapping of the file, so opening a book reads nothing up
+ * front and every JVM on a host shares the same pages.
+ *
+ * Build a book with
+ *   java OpeningBook [file] [size] [plies] [depth] [threads]
+ * which searches every position up to the given number of plies from the start to the given depth.
+ */
+public class OpeningBook {
+    private static final int MAGIC = 0x4F424B32; // "OBK2"
+    private static final int HEADER_BYTES = 16;
+    private static final Map<Integer, OpeningBook> booksBySize = new HashMap<Integer, OpeningBook>();
+
+    private final MappedByteBuffer buffer;
+    private final int size;
+    private final int count;
+    private final int depth;
+    private final Symmetry symmetry;
+
+    private OpeningBook(MappedByteBuffer buffer, Path file) {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException(file + " is not an opening book");
+        }
+        this.size = buffer.getInt(4);
+        this.count = buffer.getInt(8);
+        this.depth = buffer.getInt(12);
+        if (buffer.capacity() < HEADER_BYTES + 10L * count) {
+            throw new IllegalArgumentException(file + " is truncated");
+        }
+        this.symmetry = Symmetry.forSize(size);
+    }
+
+    /**
+     * Opens a book file by mapping it into memory read-only.
+     *
+     * @param file The book, as written by build.
+     * @throws IOException If the file cannot be read.
+     */
+    public static OpeningBook open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed
+            return new OpeningBook(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), file);
+        }
+    }
+
+    /**
+     * Returns the book for the given board size from the file "opening-{size}.book" in the working
+     * directory (or the directory named by the system property othello.book.dir), or null if there
+     * is none. Each book is opened once and shared.
+     */
+    public static synchronized OpeningBook forSize(int size) {
+        if (booksBySize.containsKey(size)) {
+            return booksBySize.get(size);
+        }
+        Path file = Paths.get(System.getProperty("othello.book.dir", "."), "opening-" + size + ".book");
+        OpeningBook book = null;
+        if (Files.isReadable(file)) {
+            try {
+                book = open(file);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        booksBySize.put(size, book);
+        return book;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the number of positions in the book.
+     */
+    public int getEntryCount() {
+        return count;
+    }
+
+    /**
+     * Returns the depth the moves of the book were searched to.
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Returns the book move for the given position, or null if the position is not in the book.
+     * The move is checked to be legal, so a hash collision can never make an AI play an illegal move.
+     * Safe to call from several threads.
+     */
+    public Position getMove(GameState s) {
+        if (s.getSize() != size) {
+            return null;
+        }
+        int t = s.canonicalSymmetry();
+        int index = find(s.transformedHash(t));
+        if (index < 0) {
+            return null;
+        }
+        int move = symmetry.inverse(t, buffer.getShort(HEADER_BYTES + 8 * count + 2 * index));
+        int[] moves = new int[size * size];
+        int moveCount = s.legalMoves(moves);
+        for (int i = 0; i < moveCount; i++) {
+            if (moves[i] == move) {
+                return s.toPosition(move);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Binary searches the sorted keys.
+     *
+     * @return The index of the key, or -1 if it is not in the book.
+     */
+    private int find(long key) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long middleKey = buffer.getLong(HEADER_BYTES + 8 * middle);
+            if (middleKey < key) {
+                low = middle + 1;
+            } else if (middleKey > key) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    //************ Building ****************//
+
+    public static void main(String[] args) throws IOException {
+        Path file = Paths.get(args.length > 0 ? args[0] : "opening-8.book");
+        int size = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int plies = args.length > 2 ? Integer.parseInt(args[2]) : 6;
+        int depth = args.length > 3 ? Integer.parseInt(args[3]) : 9;
+        int threads = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+        build(file, size, plies, depth, threads);
+    }
+
+    /**
+     * Builds a book holding every position reachable in at most the given number of plies from
+     * the start of the game (black to move), each searched by Minimax to the given depth, and
+     * writes it to the given file.
+     */
+    static void build(Path file, int size, int plies, int depth, int threads) throws IOException {
+        Map<Long, Integer> entries = new HashMap<Long, Integer>();
+        Minimax minimax = new Minimax(GameState.create(size, 1), depth);
+        minimax.setThreads(threads);
+        long start = System.nanoTime();
+        collect(GameState.create(size, 1), plies, minimax, entries);
+        System.out.printf("%,d positions searched to depth %d in %.1f s%n", entries.size(), depth, (System.nanoTime() - start) / 1e9);
+        minimax.setThreads(1);
+
+        long[] keys = new long[entries.size()];
+        int k = 0;
+        for (long key : entries.keySet()) {
+            keys[k++] = key;
+        }
+        Arrays.sort(keys);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(size);
+            out.writeInt(keys.length);
+            out.writeInt(depth);
+            for (long key : keys) {
+                out.writeLong(key);
+            }
+            for (long key : keys) {
+                out.writeShort(entries.get(key));
+            }
+        }
+    }
+
+    /**
+     * Searches the given position and every position below it up to the given number of plies
+     * that is not in the entries yet, adding their normalised keys and moves.
+     */
+    private static void collect(GameState s, int plies, Minimax minimax, Map<Long, Integer> entries) {
+        int size = s.getSize();
+        int[] moves = new int[size * size];
+        int moveCount = s.legalMoves(moves);
+        if (moveCount == 0) {
+            if (plies == 0 || s.isFinished(moveCount)) {
+                return;
+            }
+            GameState passed = s.copy();
+            passed.applyPass();
+            collect(passed, plies - 1, minimax, entries);
+            return;
+        }
+        int t = s.canonicalSymmetry();
+        long key = s.transformedHash(t);
+        if (entries.containsKey(key)) {
+            return; // Searched already, maybe in a mirrored form, and so is everything below it
+        }
+        int move = s.toSquare(minimax.decideMove(s));
+        entries.put(key, Symmetry.forSize(size).transform(t, move));
+        if (entries.size() % 100 == 0) {
+            System.out.printf("%,d positions%n", entries.size());
+        }
+        if (plies == 0) {
+            return;
+        }
+        for (int i = 0; i < moveCount; i++) {
+            GameState child = s.copy();
+            child.applyMove(moves[i]);
+            collect(child, plies - 1, minimax, entries);
+        }
+    }
+}
@@ -2,6 +2,8 @@ import javax.swing.*;
 
 import java.io.IOException;
 import java.lang.reflect.*;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 /**
  * The main class that parses command line parameters and initializes the Othello game.
@@ -14,14 +16,15 @@ public class Othello
     public static String HUMAN_CMD = "human";
 	
 	/**
-     * Valid arguments: ai1 ai2 size 
-     * Standard values for size (length of square board) is 8
+     * Valid arguments: ai1 ai2 size recordFile
+     * Standard values for size (length of square board) is 8. Without recordFile the game is not recorded
      */
     public static void main(String[] args)
     {
         IOthelloAI ai1 = null;
         IOthelloAI ai2 = null;
         int size = 8;
+        Path recordFile = null;
         
         boolean err = args.length < 2;
         String errMsg = "You need to supply at least two arguments";
@@ -70,6 +73,8 @@ public class Othello
             		err = true;
             	}
             }
+            if(args.length >= 4)
+            	recordFile = Paths.get(args[3]);
         }
         
         if(err) {
@@ -79,6 +84,7 @@ public class Othello
         
         try{
         	OthelloGUI g = new OthelloGUI(ai1, ai2, size, ai1 == null);
+        	g.setRecordFile(recordFile);
 
         	// Setup of the frame containing the game
         	JFrame f = new JFrame();
@@ -106,10 +112,11 @@ public class Othello
         if(!errMsg.equals("")) {
             System.err.println(errMsg);
         }
-        System.err.println("Usage: java PlayOthello OthelloAI1 OthelloAI2 [size]");
+        System.err.println("Usage: java PlayOthello OthelloAI1 OthelloAI2 [size] [recordFile]");
         System.err.println("\tOthelloAI1\t - Either '" + HUMAN_CMD +"' indicating a human will be playing, or specify an OthelloAI class implementing IOthelloAI.");
         System.err.println("\tOthelloAI2\t - Must always specify an OthelloAI class implementing IOthelloAI.");
         System.err.println("\tsize\t\t - Must be an even integer greater or equal to 4. Defaults to 8.");
+        System.err.println("\trecordFile\t - Game record file the finished game is appended to. Not recorded by default.");
     }
 
     /**
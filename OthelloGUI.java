@@ -2,14 +2,22 @@ import javax.imageio.ImageIO;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
+import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * GUI to show the Othello game and to listen for input for the user/human player. When it is the user's turn, 
- * (s)he clicks on the place where (s)he wants to place a token, and when it is the computer's turn, the 
- * player needs to click anywhere in the frame to make the computer take it's turn. The user is made aware
- * of any illegal moves, or when (s)he - or the computer - have to pass because no legal moves are possible.  
+ * (s)he clicks on the place where (s)he wants to place a token. When it is the computer's turn, the computer
+ * thinks on a background thread and moves by itself, so the window stays responsive; two AIs play each other
+ * without any clicks. While the computer thinks, the top of the window shows its search depth and nodes (for
+ * an InterruptibleAI); a click makes it move now with the best move found so far, and Escape or a right click
+ * cancels its turn until the next click. The user is made aware of any illegal moves, or when (s)he - or the
+ * computer - have to pass because no legal moves are possible. With a record file, the finished game is
+ * appended to it (see GameRecordWriter).
  * @author Mai Ajspur
  * @version 9.2.2018
  */
@@ -17,12 +25,28 @@ public class OthelloGUI extends JComponent implements MouseListener
 {
     static final long 	serialVersionUID = 1234567890;
 	static final int 	imgSize = 100;
+	static final int 	aiMoveDelay = 400;	// Milliseconds between the moves of two AIs, so the game can be followed
 	
 	private GameState state;		// The state of the game
     private int size;				// Number of rows and columns on the board
     private boolean humanPlayer;	// Whether a human player is playing or not
     private IOthelloAI ai1;			// The AI for player 1 if there are no human player
     private IOthelloAI ai2;			// The AI for player 2 
+    
+    private final ExecutorService aiThread;	// Runs the AIs' decideMove off the event dispatch thread
+    private final Timer progressTimer;		// Repaints the thinking indicator while an AI thinks
+    private IOthelloAI thinkingAI;			// The AI whose turn is being searched, or null
+    private int aiTurn;						// Counts the AI turns started, so the move of a cancelled one is ignored
+    private volatile int decidedTurn;		// The last turn whose decideMove has returned on the AI thread
+    private boolean paused;					// Whether the AI waits for a click, after a cancelled turn or an invalid move
+    private boolean finished;				// Whether the game is over; updated after each move rather than in paint
+    
+    private GameRecord record;				// The moves so far, with how long each took
+    private long turnStart;					// When the last move was made, for the think time of a human
+    private Path recordFile;				// Where the finished game is appended, or null
+    
+    private BufferedImage boardImage;		// The borders and squares as last drawn, so paint only copies it
+    private int[][] drawnBoard;				// The contents of each square as drawn in boardImage
 
     // Images for drawing the game board
     private Image 		part, blackPion, whitePion, background;
@@ -56,33 +80,94 @@ public class OthelloGUI extends JComponent implements MouseListener
     	tie = ImageIO.read(new File("imgs/tie.png"));
 		
     	this.size = size;
-    	this.state = new GameState(size, 1); // Player 1 (human if there is any) goes first
+    	this.state = GameState.create(size, 1); // Player 1 (human if there is any) goes first
     	this.humanPlayer = humanPlayer;
     	if ( !humanPlayer )
     		this.ai1 = ai1;
     	this.ai2=ai2;
+    	this.record = new GameRecord(size, humanPlayer ? Othello.HUMAN_CMD : ai1.getClass().getName(), ai2.getClass().getName());
+    	this.turnStart = System.nanoTime();
+    	this.aiThread = Executors.newSingleThreadExecutor(r -> {
+    		Thread t = new Thread(r, "Othello AI");
+    		t.setDaemon(true); // Does not keep the program running when the window is closed
+    		return t;
+    	});
+    	this.progressTimer = new Timer(100, e -> repaintStatus());
+    	this.setDoubleBuffered(true);
     	this.addMouseListener(this);
+    	getInputMap(WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke(KeyEvent.VK_ESCAPE, 0), "cancelAI");
+    	getActionMap().put("cancelAI", new AbstractAction(){
+    		static final long serialVersionUID = 1;
+    		public void actionPerformed(ActionEvent e){
+    			cancelAITurn();
+    		}
+    	});
+    	SwingUtilities.invokeLater(this::nextTurn); // Two AIs start playing by themselves
+    }
+
+    /**
+     * Makes the game be appended to the given game record file when it is finished.
+     */
+    public void setRecordFile(Path recordFile){
+    	this.recordFile = recordFile;
     }
 
     /**
-     * Draws the current game board and shows if someone won.
+     * Draws the current game board and shows if someone won. The board is copied from boardImage,
+     * which is drawn once and then kept up to date by boardChanged, and only within the clip of the
+     * repaint.
      */
     public void paint(Graphics g){
-		int[][] gameBoard = state.getBoard();
-    	this.setDoubleBuffered(true);
     	Insets in = getInsets();               
     	g.translate(in.left, in.top);            
-
+    	if ( boardImage == null )
+    		createBoardImage();
+    	g.drawImage(boardImage, 0, 0, this);
+		
+    	if ( finished ){
+    		int[] tokens = state.countTokens();
+    		if ( tokens[0] > tokens[1] )
+    			g.drawImage(blackWon, size*imgSize/2-(imgSize/2), size*imgSize/2+(imgSize/4), this);
+    		else if ( tokens[0] < tokens[1] )
+    			g.drawImage(whiteWon, size*imgSize/2-(imgSize/2), size*imgSize/2+(imgSize/4), this);
+    		else
+    			g.drawImage(tie, size*imgSize/2-(imgSize/2), size*imgSize/2+(imgSize/4), this);
+    	}		
+    	
+    	String status = null;
+    	if ( thinkingAI != null ){
+    		status = (state.getPlayerInTurn() == 1 ? "Black" : "White") + " is thinking";
+    		if ( thinkingAI instanceof InterruptibleAI ){
+    			InterruptibleAI ai = (InterruptibleAI) thinkingAI;
+    			status += String.format(": depth %d, %,d nodes. Click to move now, Esc to cancel", ai.getSearchDepth(), ai.getSearchNodes());
+    		}
+    		else
+    			status += ". Esc to cancel";
+    	}
+    	else if ( paused && !finished )
+    		status = "Click to let " + (state.getPlayerInTurn() == 1 ? "black" : "white") + " move";
+    	if ( status != null ){
+    		g.setColor(Color.DARK_GRAY);
+    		g.drawString(status, imgSize, imgSize/3);
+    	}
+    }
+    
+    /**
+     * Draws the borders, the corners and every square into boardImage. Afterwards only the squares
+     * that change are drawn again, by boardChanged.
+     */
+    private void createBoardImage(){
+    	int length = (size+2)*imgSize;
+    	GraphicsConfiguration gc = getGraphicsConfiguration();
+    	// A compatible image can be kept in video memory, so copying it to the screen is cheap
+    	boardImage = gc != null ? gc.createCompatibleImage(length, length, Transparency.TRANSLUCENT)
+    							: new BufferedImage(length, length, BufferedImage.TYPE_INT_ARGB);
+    	drawnBoard = new int[size][size];
+    	int[][] gameBoard = state.getBoard();
+    	Graphics2D g = boardImage.createGraphics();
     	for (int c = 0; c < size; c++){
     		for (int r = 0; r < size; r++){
-    			int player = gameBoard[c][r];
-    			if (player == 0) // background
-    				g.drawImage(background, imgSize+imgSize*c, imgSize+imgSize*r, this);
-    			else if (player == 2) // white = player2
-    				g.drawImage(whitePion, imgSize+imgSize*c, imgSize+imgSize*r, this);
-    			else // black = player1
-    				g.drawImage(blackPion, imgSize+imgSize*c, imgSize+imgSize*r, this);
-    			g.drawImage(part, imgSize+imgSize*c, imgSize+imgSize*r, this);
+    			drawSquare(g, c, r, gameBoard[c][r]);
     			if (c == 0){
     				g.drawImage(border_left, 0, imgSize+imgSize*r, this); 
     				g.drawImage(border_right, size*imgSize+imgSize, imgSize+imgSize*r, this); 
@@ -95,32 +180,99 @@ public class OthelloGUI extends JComponent implements MouseListener
     	g.drawImage(corner_left_bottom, 0, size*imgSize+imgSize, this);
     	g.drawImage(corner_right_top, imgSize+imgSize*size, 0, this);
     	g.drawImage(corner_right_bottom, imgSize+imgSize*size, size*imgSize+imgSize, this);
-		
-    	if ( state.isFinished() ){
-    		int[] tokens = state.countTokens();
-    		if ( tokens[0] > tokens[1] )
-    			g.drawImage(blackWon, size*imgSize/2-(imgSize/2), size*imgSize/2+(imgSize/4), this);
-    		else if ( tokens[0] < tokens[1] )
-    			g.drawImage(whiteWon, size*imgSize/2-(imgSize/2), size*imgSize/2+(imgSize/4), this);
-    		else
-    			g.drawImage(tie, size*imgSize/2-(imgSize/2), size*imgSize/2+(imgSize/4), this);
-    	}		
+    	g.dispose();
+    }
+    
+    /**
+     * Draws one square into boardImage: its token or background, then the grid on top
+     */
+    private void drawSquare(Graphics2D g, int c, int r, int player){
+    	Image token;
+    	if (player == 0) // background
+    		token = background;
+    	else if (player == 2) // white = player2
+    		token = whitePion;
+    	else // black = player1
+    		token = blackPion;
+    	g.setComposite(AlphaComposite.Src); // Replaces what was drawn on the square before
+    	g.drawImage(token, imgSize+imgSize*c, imgSize+imgSize*r, this);
+    	g.setComposite(AlphaComposite.SrcOver);
+    	g.drawImage(part, imgSize+imgSize*c, imgSize+imgSize*r, this);
+    	drawnBoard[c][r] = player;
+    }
+    
+    /**
+     * Called after every change of the state: redraws the squares that changed into boardImage and
+     * repaints only those, and updates whether the game is over
+     */
+    private void boardChanged(){
+    	finished = state.isFinished();
+    	if ( boardImage != null ){ // Otherwise the first paint draws everything
+    		int[][] gameBoard = state.getBoard();
+    		Insets in = getInsets();
+    		Graphics2D g = boardImage.createGraphics();
+    		for (int c = 0; c < size; c++){
+    			for (int r = 0; r < size; r++){
+    				if ( gameBoard[c][r] != drawnBoard[c][r] ){
+    					drawSquare(g, c, r, gameBoard[c][r]);
+    					repaint(in.left+imgSize+imgSize*c, in.top+imgSize+imgSize*r, imgSize, imgSize);
+    				}
+    			}
+    		}
+    		g.dispose();
+    	}
+    	if ( finished ) // The result is shown across the board
+    		repaint();
+    	repaintStatus();
+    }
+    
+    /**
+     * Repaints the strip at the top where the thinking indicator is shown
+     */
+    private void repaintStatus(){
+    	Insets in = getInsets();
+    	repaint(in.left, in.top, getWidth(), imgSize/2);
     }
 
     public void mouseClicked(MouseEvent e){
+    	if ( finished )
+    		return;
+    	if ( thinkingAI != null ){
+    		if ( SwingUtilities.isRightMouseButton(e) )
+    			cancelAITurn();
+    		else // Move now, with the best move found so far
+    			stopSearch(thinkingAI, aiTurn);
+    	}
+    	else if ( isHumanTurn() )
+    		makeMove(humanSelectedPlace(e), System.nanoTime() - turnStart);
+    	else { // The AI's turn was cancelled, or its move was invalid; it tries again
+    		paused = false;
+    		startAITurn();
+    	}
+    }
+    
+    /**
+     * Makes the given move for the player in turn, passes for the next player if it cannot move,
+     * and lets the AI think if it is in turn next
+     * @param thinkNanos How long the player took to choose the move, for the record
+     */
+    private void makeMove(Position place, long thinkNanos){
     	int currentPlayer = state.getPlayerInTurn();
-    	if ( !state.isFinished() ){
-    		Position place = getPlaceForNextToken(e);
+    	if ( !finished ){
     		if ( state.insertToken(place) ){ // Chosen move is legal
+    			record.addMove(state.toSquare(place), thinkNanos);
+    			turnStart = System.nanoTime();
 				boolean nextPlayerCannotMove = state.legalMoves().isEmpty();
    				if ( nextPlayerCannotMove ){ // The next player cannot move
-					repaint();
+					boardChanged();
    					state.changePlayer();
+   					boolean canMoveAfterwards = !state.legalMoves().isEmpty();
+   					if ( canMoveAfterwards ) // Otherwise the game is over
+   						record.addPass();
    					if ( humanPlayer ){ // If there is a human involved, (s)he needs to know this
-   	  					boolean canMoveAfterwards = !state.legalMoves().isEmpty();
    	   					if ( canMoveAfterwards ){
    	   						String message = currentPlayer == 1 ? "Your opponent has no legal moves. It is your turn again." 
-   	   													 	    : "You have no legal moves. Your opponent will make another move (click again).";
+   	   													 	    : "You have no legal moves. Your opponent will make another move.";
    	   						JOptionPane.showMessageDialog(this, message);
    	   					}  						
    					}
@@ -128,23 +280,128 @@ public class OthelloGUI extends JComponent implements MouseListener
  			}
    			else 
    				illegalMoveAttempted(place); 		
-    		repaint();
+    		boardChanged();
+    		if ( finished ){
+    			saveRecord();
+    			gameOver(ai1);
+    			gameOver(ai2);
+    		}
+    		nextTurn();
     	}
     }
     
     /**
-     * Get a position to place the next token (i.e. read mouse click if human
-     * player is in turn, otherwise ask corresponding AI)
+     * Appends the finished game to the record file, if there is one
      */
-    private Position getPlaceForNextToken(MouseEvent e){
-    	if ( state.getPlayerInTurn() == 2 ) 
-			return ai2.decideMove(state);
-		else {
-			if ( humanPlayer )
-				return humanSelectedPlace(e);
-			else
-				return ai1.decideMove(state);
-		}
+    private void saveRecord(){
+    	if ( recordFile == null )
+    		return;
+    	record.setScore(state);
+    	try (GameRecordWriter writer = GameRecordWriter.open(recordFile)){
+    		writer.append(record);
+    	} catch (IOException | IllegalArgumentException e){
+    		JOptionPane.showMessageDialog(this, "The game could not be recorded in " + recordFile + ": " + e.getMessage(), 
+    			"Record Error", JOptionPane.ERROR_MESSAGE);
+    	}
+    }
+    
+    /**
+     * Lets the AI stop what it does in the background, e.g. pondering, now that the game is over.
+     * Done on the AI thread, so the window does not wait for it.
+     */
+    private void gameOver(IOthelloAI ai){
+    	if ( ai instanceof InterruptibleAI )
+    		aiThread.execute(((InterruptibleAI) ai)::gameOver);
+    }
+    
+    private boolean isHumanTurn(){
+    	return humanPlayer && state.getPlayerInTurn() == 1;
+    }
+    
+    /**
+     * Lets the AI in turn think, if any, after a short delay when two AIs play each other
+     */
+    private void nextTurn(){
+    	if ( finished || paused || isHumanTurn() )
+    		return;
+    	if ( humanPlayer )
+    		startAITurn();
+    	else {
+    		Timer delay = new Timer(aiMoveDelay, e -> startAITurn());
+    		delay.setRepeats(false);
+    		delay.start();
+    	}
+    }
+    
+    /**
+     * Asks the AI in turn for its move on the background thread. It gets a copy of the state, so the
+     * board can be painted meanwhile, and its move is made on the event dispatch thread.
+     */
+    private void startAITurn(){
+    	if ( thinkingAI != null || paused || finished || isHumanTurn() )
+    		return;
+    	IOthelloAI ai = state.getPlayerInTurn() == 1 ? ai1 : ai2;
+    	GameState copy = state.copy();
+    	int turn = ++aiTurn;
+    	thinkingAI = ai;
+    	progressTimer.start();
+    	aiThread.execute(() -> {
+    		Position place;
+    		long start = System.nanoTime();
+    		try {
+    			place = ai.decideMove(copy);
+    		} catch (RuntimeException ex) {
+    			ex.printStackTrace();
+    			place = new Position(-1, -1); // Reported as an invalid move
+    		}
+    		decidedTurn = turn;
+    		Position move = place;
+    		long thinkNanos = System.nanoTime() - start;
+    		SwingUtilities.invokeLater(() -> aiMoveDecided(turn, move, thinkNanos));
+    	});
+    	repaintStatus();
+    }
+    
+    private void aiMoveDecided(int turn, Position place, long thinkNanos){
+    	if ( turn != aiTurn ) // The turn was cancelled
+    		return;
+    	thinkingAI = null;
+    	progressTimer.stop();
+    	makeMove(place, thinkNanos);
+    }
+    
+    /**
+     * Stops the AI that is thinking and ignores its move. It thinks again at the next click.
+     */
+    private void cancelAITurn(){
+    	if ( thinkingAI == null )
+    		return;
+    	stopSearch(thinkingAI, aiTurn); // Its move is not needed, and the next turn would wait for it
+    	aiTurn++;
+    	thinkingAI = null;
+    	paused = true;
+    	progressTimer.stop();
+    	repaintStatus();
+    }
+
+    /**
+     * Stops the search of the given AI turn. The AI thread may not have started it yet, e.g. while
+     * the AI looks in its opening book, and decideMove ignores a stopSearch from before it started;
+     * so the stop is repeated until decideMove has returned for that turn.
+     */
+    private void stopSearch(IOthelloAI thinking, int turn){
+    	if ( !(thinking instanceof InterruptibleAI) )
+    		return;
+    	InterruptibleAI ai = (InterruptibleAI) thinking;
+    	ai.stopSearch();
+    	Timer repeat = new Timer(50, null);
+    	repeat.addActionListener(e -> {
+    		if ( decidedTurn >= turn )
+    			repeat.stop();
+    		else
+    			ai.stopSearch();
+    	});
+    	repeat.start();
     }
 
     /**
@@ -155,6 +412,7 @@ public class OthelloGUI extends JComponent implements MouseListener
     	if ( humanPlayer && currentPlayer == 1 )
     		JOptionPane.showMessageDialog(this, "That is not a legal move (position " + place +"). Try again.");
 		else {
+			paused = true; // Asking it again would most likely give the same move
 			JOptionPane.showMessageDialog(this, "The AI for player "+ currentPlayer + 
 				(currentPlayer == 1 ? " (black)" : " (white)") + " chose an invalid "
    				+ "move (position " + place +"). Please debug!", "Invalid Move", JOptionPane.ERROR_MESSAGE); 		
@@ -0,0 +1,33 @@
+import java.util.List;
+
+/**
+ * Searches a fixed suite of pass-heavy positions (see Positions.passHeavy) at a fixed depth and
+ * prints the move chosen and the nodes visited for each, so changes to how the search handles
+ * passes can be compared by their node counts.
+ *
+ * Usage: java PassRegression [size] [depth] [positions] [seed]
+ */
+public class PassRegression {
+
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int depth = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int count = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : 1;
+
+        List<GameState> positions = Positions.passHeavy(size, count, seed);
+        long totalNodes = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < positions.size(); i++) {
+            GameState s = positions.get(i);
+            // No transposition table, so the node counts only depend on the search itself
+            Minimax minimax = new Minimax(s, depth, 0, TranspositionTable.ReplacementPolicy.ALWAYS);
+            Position move = minimax.decideMove(s);
+            totalNodes += minimax.getNodeCount();
+            System.out.printf("%3d  empties %3d  move %-8s  nodes %,12d%n",
+                    i, Positions.emptySquares(s), move, minimax.getNodeCount());
+        }
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        System.out.printf("positions %d  depth %d  total nodes %,d  time %d ms%n", positions.size(), depth, totalNodes, millis);
+    }
+}
@@ -0,0 +1,525 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A pattern-based evaluation function with trained weights, as an alternative to the token count
+ * and square utility of Minimax.evaluateBoard.
+ *
+ * The value of a position for a player is the sum of
+ * - one weight per pattern instance, looked up by the contents of its squares: the 3x3 block in
+ *   each corner, the edges and the diagonals (lines of up to 8 squares starting in a corner). All
+ *   rotations and reflections of a pattern share one table, indexed by the squares read in base 3
+ *   (0 empty, 1 the player's token, 2 the opponent's);
+ * - a bias, and weights for the differences in mobility, frontier tokens (tokens next to an empty
+ *   square) and tokens between the player and the opponent,
+ * with a separate set of weights for each of PHASES game phases, by the number of tokens on the
+ * board. Values are in 1/SCALE of a token of final token difference.
+ *
+ * Weights are trained offline by PatternTrainer and stored as shorts in a binary file: a header
+ * (magic, board size, phases, pattern weights per phase, feature weights per phase) followed by
+ * the pattern weights and the feature weights of each phase. They are loaded into short arrays,
+ * which for 8x8 take about 260 kB, so they mostly stay in the CPU cache.
+ */
+public class PatternEvaluator {
+    /** Evaluation units per token of final token difference */
+    public static final int SCALE = 16;
+    /** Number of game phases with their own weights */
+    public static final int PHASES = 4;
+
+    static final int FEATURES = 4;         // Bias, mobility, frontier and token differences
+    private static final int MAGIC = 0x4F505731; // "OPW1"
+    private static final int MAX_LINE = 8; // Edges and diagonals are at most this long, so their tables stay small
+
+    private static final Map<Integer, PatternEvaluator> evaluatorsBySize = new HashMap<Integer, PatternEvaluator>();
+
+    // How the squares of an instance are gathered from an 8x8 bitboard (bit col*8 + row) into the low bits
+    private static final int BLOCK = 0;         // A 3x3 block: three runs of three bits
+    private static final int COLUMN = 1;        // One byte
+    private static final int ROW = 2;           // The same bit of every byte
+    private static final int DIAGONAL = 3;      // Squares (i, i)
+    private static final int ANTI_DIAGONAL = 4; // Squares (7 - i, i)
+
+    private final int size;
+    private final int[][] instances;       // The squares of each pattern instance, in the order of their base 3 digits
+    private final int[] gatherKinds;       // On 8x8: how each instance's squares are gathered from a bitboard
+    private final int[] gatherShifts;      // The column, row or top left square of the instance for its gather
+    private final int[][] gatherIndices;   // The index of the instance for each set of gathered bits with one player's tokens
+    private final int[] tableOffsets;      // Where the table of each instance's pattern starts in the weights of a phase
+    private final int[] instanceCols;      // The column and row of every square of every instance, for the array form
+    private final int[] instanceRows;
+    private final int entries;             // Pattern weights per phase
+    final short[][] patternWeights;        // [phase][table offset + index]
+    final short[][] featureWeights;        // [phase][feature]
+
+    /**
+     * Creates an evaluator for the given board size with all weights 0, e.g. to be trained.
+     */
+    public PatternEvaluator(int size) {
+        this.size = size;
+        Symmetry symmetry = Symmetry.forSize(size);
+        List<int[]> allInstances = new ArrayList<int[]>();
+        List<Integer> offsets = new ArrayList<Integer>();
+        int line = Math.min(size, MAX_LINE);
+        int[][] shapes = {cornerShape(size), edgeShape(size, line), diagonalShape(size, line)};
+        int offset = 0;
+        for (int shape = 0; shape < shapes.length; shape++) {
+            for (int t : placementsOf(shapes[shape], symmetry)) {
+                int[] squares = new int[shapes[shape].length];
+                for (int j = 0; j < squares.length; j++) {
+                    squares[j] = symmetry.transform(t, shapes[shape][j]);
+                }
+                allInstances.add(squares);
+                offsets.add(offset);
+            }
+            offset += power3(shapes[shape].length);
+        }
+        this.instances = allInstances.toArray(new int[0][]);
+        this.tableOffsets = new int[instances.length];
+        for (int i = 0; i < instances.length; i++) {
+            tableOffsets[i] = offsets.get(i);
+        }
+        this.gatherKinds = new int[instances.length];
+        this.gatherShifts = new int[instances.length];
+        this.gatherIndices = new int[instances.length][];
+        if (size == BitboardGameState.SIZE) {
+            for (int i = 0; i < instances.length; i++) {
+                prepareGather(i);
+            }
+        }
+        int squareCount = 0;
+        for (int[] squares : instances) {
+            squareCount += squares.length;
+        }
+        this.instanceCols = new int[squareCount];
+        this.instanceRows = new int[squareCount];
+        int k = 0;
+        for (int[] squares : instances) {
+            for (int square : squares) {
+                instanceCols[k] = square / size;
+                instanceRows[k] = square % size;
+                k++;
+            }
+        }
+        this.entries = offset;
+        this.patternWeights = new short[PHASES][entries];
+        this.featureWeights = new short[PHASES][FEATURES];
+    }
+
+    /**
+     * Loads the weights written by save.
+     *
+     * @throws IOException If the file cannot be read.
+     * @throws IllegalArgumentException If the file does not hold weights for this evaluator's patterns.
+     */
+    public static PatternEvaluator load(Path file) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // Read until the buffer is full
+            }
+            buffer.flip();
+        }
+        if (buffer.remaining() < 20 || buffer.getInt() != MAGIC) {
+            throw new IllegalArgumentException(file + " is not a pattern weights file");
+        }
+        PatternEvaluator evaluator = new PatternEvaluator(buffer.getInt());
+        if (buffer.getInt() != PHASES || buffer.getInt() != evaluator.entries || buffer.getInt() != FEATURES
+                || buffer.remaining() < 2 * PHASES * (evaluator.entries + FEATURES)) {
+            throw new IllegalArgumentException(file + " does not match the patterns of this version");
+        }
+        for (short[] weights : evaluator.patternWeights) {
+            buffer.asShortBuffer().get(weights);
+            buffer.position(buffer.position() + 2 * weights.length);
+        }
+        for (short[] weights : evaluator.featureWeights) {
+            buffer.asShortBuffer().get(weights);
+            buffer.position(buffer.position() + 2 * weights.length);
+        }
+        return evaluator;
+    }
+
+    /**
+     * Writes the weights to a file, to be read by load.
+     */
+    public void save(Path file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(size);
+            out.writeInt(PHASES);
+            out.writeInt(entries);
+            out.writeInt(FEATURES);
+            for (short[] weights : patternWeights) {
+                for (short w : weights) {
+                    out.writeShort(w);
+                }
+            }
+            for (short[] weights : featureWeights) {
+                for (short w : weights) {
+                    out.writeShort(w);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the evaluator for the given board size with the weights from the file
+     * "patterns-{size}.weights" in the working directory (or the directory named by the system
+     * property othello.weights.dir), or null if there is none. Each file is loaded once and shared.
+     */
+    public static synchronized PatternEvaluator forSize(int size) {
+        if (evaluatorsBySize.containsKey(size)) {
+            return evaluatorsBySize.get(size);
+        }
+        Path file = Paths.get(System.getProperty("othello.weights.dir", "."), "patterns-" + size + ".weights");
+        PatternEvaluator evaluator = null;
+        if (Files.isReadable(file)) {
+            try {
+                evaluator = load(file);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (evaluator.size != size) {
+                throw new IllegalArgumentException(file + " holds weights for size " + evaluator.size);
+            }
+        }
+        evaluatorsBySize.put(size, evaluator);
+        return evaluator;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the value of the position for the given player, in 1/SCALE tokens.
+     * Safe to call from several threads.
+     *
+     * @param s The position.
+     * @param player The player (1 or 2) the value is for.
+     */
+    public int evaluate(GameState s, int player) {
+        int opponent = player == 1 ? 2 : 1;
+        int tokens = s.countTokens(player);
+        int opponentTokens = s.countTokens(opponent);
+        int phase = phase(tokens + opponentTokens);
+        short[] weights = patternWeights[phase];
+        int value = 0;
+        int frontier;
+        if (s instanceof BitboardGameState) {
+            BitboardGameState b = (BitboardGameState) s;
+            long own = b.tokens(player);
+            long opp = b.tokens(opponent);
+            for (int i = 0; i < instances.length; i++) {
+                int[] indices = gatherIndices[i];
+                int kind = gatherKinds[i];
+                int shift = gatherShifts[i];
+                value += weights[tableOffsets[i] + indices[gather(own, kind, shift)] + 2 * indices[gather(opp, kind, shift)]];
+            }
+            frontier = frontierDifference(own, opp);
+        } else if (s instanceof LargeBitboardGameState) {
+            LargeBitboardGameState b = (LargeBitboardGameState) s;
+            long[] own = b.tokens(player);
+            long[] opp = b.tokens(opponent);
+            for (int i = 0, k = 0; i < instances.length; k += instances[i].length, i++) {
+                value += weights[tableOffsets[i] + index(own, opp, k, instances[i].length)];
+            }
+            frontier = frontierDifference(own, opp);
+        } else {
+            int[][] board = s.getBoard();
+            for (int i = 0, k = 0; i < instances.length; k += instances[i].length, i++) {
+                value += weights[tableOffsets[i] + index(board, player, k, instances[i].length)];
+            }
+            frontier = frontierDifference(board, player);
+        }
+        short[] features = featureWeights[phase];
+        return value + features[0]
+                + features[1] * (s.countLegalMoves(player) - s.countLegalMoves(opponent))
+                + features[2] * frontier
+                + features[3] * (tokens - opponentTokens);
+    }
+
+    /**
+     * Extracts the features evaluate sums up, for training: the index into the pattern weights of
+     * the phase of every pattern instance, and the feature values (1 for the bias).
+     *
+     * @param indices Filled with one index per pattern instance; at least getInstanceCount() long.
+     * @param features Filled with the FEATURES feature values.
+     * @return The phase of the position.
+     */
+    int extract(GameState s, int player, int[] indices, int[] features) {
+        int opponent = player == 1 ? 2 : 1;
+        int tokens = s.countTokens(player);
+        int opponentTokens = s.countTokens(opponent);
+        int[][] board = s.getBoard();
+        for (int i = 0, k = 0; i < instances.length; k += instances[i].length, i++) {
+            indices[i] = tableOffsets[i] + index(board, player, k, instances[i].length);
+        }
+        features[0] = 1;
+        features[1] = s.countLegalMoves(player) - s.countLegalMoves(opponent);
+        features[2] = frontierDifference(board, player);
+        features[3] = tokens - opponentTokens;
+        return phase(tokens + opponentTokens);
+    }
+
+    /**
+     * Returns the number of pattern instances, i.e. of pattern weights summed per evaluation.
+     */
+    int getInstanceCount() {
+        return instances.length;
+    }
+
+    /**
+     * Returns the number of pattern weights per phase.
+     */
+    int getEntryCount() {
+        return entries;
+    }
+
+    private int phase(int tokensOnBoard) {
+        return (tokensOnBoard - 4) * PHASES / (size * size - 3);
+    }
+
+    //************ Pattern indices ****************//
+
+    /**
+     * Gathers the squares of an instance from an 8x8 bitboard (bit col*8 + row) into the low bits.
+     * The multiplications move one bit of every byte into the top byte without carries.
+     *
+     * @param kind BLOCK, COLUMN, ROW, DIAGONAL or ANTI_DIAGONAL.
+     * @param shift The top left square of a block, the column or the row.
+     */
+    private static int gather(long bits, int kind, int shift) {
+        switch (kind) {
+            case BLOCK:
+                bits >>>= shift;
+                return (int) ((bits & 7) | ((bits >>> 5) & 0x38) | ((bits >>> 10) & 0x1C0));
+            case COLUMN:
+                return (int) ((bits >>> (8 * shift)) & 0xFF);
+            case ROW:
+                return (int) ((((bits >>> shift) & 0x0101010101010101L) * 0x0102040810204080L) >>> 56);
+            case DIAGONAL:
+                return (int) (((bits & 0x8040201008040201L) * 0x0101010101010101L) >>> 56);
+            default:
+                return (int) (((bits & 0x0102040810204080L) * 0x0101010101010101L) >>> 56);
+        }
+    }
+
+    /**
+     * Works out how to gather the squares of an instance on an 8x8 board, and the table turning
+     * the gathered bits into the instance's index.
+     */
+    private void prepareGather(int instance) {
+        int[] squares = instances[instance];
+        int minCol = Integer.MAX_VALUE;
+        int minRow = Integer.MAX_VALUE;
+        boolean sameCol = true;
+        boolean sameRow = true;
+        boolean diagonal = true;
+        boolean antiDiagonal = true;
+        for (int square : squares) {
+            int col = square / size;
+            int row = square % size;
+            minCol = Math.min(minCol, col);
+            minRow = Math.min(minRow, row);
+            sameCol &= col == squares[0] / size;
+            sameRow &= row == squares[0] % size;
+            diagonal &= col == row;
+            antiDiagonal &= col + row == size - 1;
+        }
+        int[] gathered; // The square each gathered bit comes from
+        if (squares.length == 9) {
+            gatherKinds[instance] = BLOCK;
+            gatherShifts[instance] = minCol * size + minRow;
+            gathered = new int[9];
+            for (int b = 0; b < 9; b++) {
+                gathered[b] = (minCol + b / 3) * size + minRow + b % 3;
+            }
+        } else {
+            gathered = new int[size];
+            for (int b = 0; b < size; b++) {
+                if (sameCol) {
+                    gathered[b] = minCol * size + b;
+                } else if (sameRow) {
+                    gathered[b] = b * size + minRow;
+                } else if (diagonal) {
+                    gathered[b] = b * size + b;
+                } else {
+                    gathered[b] = (size - 1 - b) * size + b;
+                }
+            }
+            gatherKinds[instance] = sameCol ? COLUMN : sameRow ? ROW : diagonal ? DIAGONAL : ANTI_DIAGONAL;
+            gatherShifts[instance] = sameCol ? minCol : minRow;
+        }
+        int[] digitWeights = new int[gathered.length]; // 3^j for the j-th square of the instance
+        for (int b = 0; b < gathered.length; b++) {
+            for (int j = 0; j < squares.length; j++) {
+                if (squares[j] == gathered[b]) {
+                    digitWeights[b] = power3(j);
+                }
+            }
+        }
+        int[] indices = new int[1 << gathered.length];
+        for (int bits = 1; bits < indices.length; bits++) {
+            int b = Integer.numberOfTrailingZeros(bits);
+            indices[bits] = indices[bits & (bits - 1)] + digitWeights[b];
+        }
+        gatherIndices[instance] = indices;
+    }
+
+    /**
+     * Returns the index of an instance on the array form.
+     *
+     * @param first The position of the instance's first square in instanceCols and instanceRows.
+     * @param length The number of squares of the instance.
+     */
+    private int index(int[][] board, int player, int first, int length) {
+        int index = 0;
+        for (int k = first + length - 1; k >= first; k--) {
+            int token = board[instanceCols[k]][instanceRows[k]];
+            index = index * 3 + (token == 0 ? 0 : token == player ? 1 : 2);
+        }
+        return index;
+    }
+
+    /**
+     * Returns the index of an instance on the column words of a multi-word bitboard.
+     */
+    private int index(long[] own, long[] opp, int first, int length) {
+        int index = 0;
+        for (int k = first + length - 1; k >= first; k--) {
+            int col = instanceCols[k];
+            int row = instanceRows[k];
+            index = index * 3 + (int) ((own[col] >>> row & 1) | (opp[col] >>> row & 1) << 1);
+        }
+        return index;
+    }
+
+    /**
+     * Returns the player's frontier tokens minus the opponent's.
+     */
+    private static int frontierDifference(long own, long opp) {
+        long nextToEmpty = BitboardGameState.neighbours(~(own | opp));
+        return Long.bitCount(own & nextToEmpty) - Long.bitCount(opp & nextToEmpty);
+    }
+
+    private int frontierDifference(long[] own, long[] opp) {
+        long full = (1L << size) - 1;
+        int difference = 0;
+        long before = 0; // The empty squares of the previous column and their row neighbours
+        long here = spread(~(own[0] | opp[0]) & full);
+        for (int col = 0; col < size; col++) {
+            long after = col + 1 < size ? spread(~(own[col + 1] | opp[col + 1]) & full) : 0;
+            long nextToEmpty = before | here | after;
+            difference += Long.bitCount(own[col] & nextToEmpty) - Long.bitCount(opp[col] & nextToEmpty);
+            before = here;
+            here = after;
+        }
+        return difference;
+    }
+
+    /**
+     * Returns the given rows of a column together with the rows next to them.
+     */
+    private static long spread(long rows) {
+        return rows | rows << 1 | rows >>> 1;
+    }
+
+    private int frontierDifference(int[][] board, int player) {
+        int difference = 0;
+        for (int col = 0; col < size; col++) {
+            for (int row = 0; row < size; row++) {
+                int token = board[col][row];
+                if (token != 0 && nextToEmpty(board, col, row)) {
+                    difference += token == player ? 1 : -1;
+                }
+            }
+        }
+        return difference;
+    }
+
+    private boolean nextToEmpty(int[][] board, int col, int row) {
+        for (int c = Math.max(0, col - 1); c <= Math.min(size - 1, col + 1); c++) {
+            for (int r = Math.max(0, row - 1); r <= Math.min(size - 1, row + 1); r++) {
+                if (board[c][r] == 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    //************ Pattern shapes ****************//
+
+    private static int[] cornerShape(int size) {
+        int[] squares = new int[9];
+        for (int col = 0; col < 3; col++) {
+            for (int row = 0; row < 3; row++) {
+                squares[col * 3 + row] = col * size + row;
+            }
+        }
+        return squares;
+    }
+
+    private static int[] edgeShape(int size, int length) {
+        int[] squares = new int[length];
+        for (int row = 0; row < length; row++) {
+            squares[row] = row;
+        }
+        return squares;
+    }
+
+    private static int[] diagonalShape(int size, int length) {
+        int[] squares = new int[length];
+        for (int i = 0; i < length; i++) {
+            squares[i] = i * size + i;
+        }
+        return squares;
+    }
+
+    /**
+     * Returns the transformations that place a shape on distinct squares of the board. Placements
+     * covering the same squares are the same instance, e.g. an edge read from either end.
+     */
+    private static List<Integer> placementsOf(int[] shape, Symmetry symmetry) {
+        List<Integer> placements = new ArrayList<Integer>();
+        List<int[]> covered = new ArrayList<int[]>();
+        for (int t = 0; t < Symmetry.COUNT; t++) {
+            int[] squares = new int[shape.length];
+            for (int j = 0; j < shape.length; j++) {
+                squares[j] = symmetry.transform(t, shape[j]);
+            }
+            Arrays.sort(squares);
+            boolean seen = false;
+            for (int[] other : covered) {
+                seen |= Arrays.equals(other, squares);
+            }
+            if (!seen) {
+                placements.add(t);
+                covered.add(squares);
+            }
+        }
+        return placements;
+    }
+
+    private static int power3(int exponent) {
+        int result = 1;
+        for (int i = 0; i < exponent; i++) {
+            result *= 3;
+        }
+        return result;
+    }
+}
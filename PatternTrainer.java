@@ -0,0 +1,249 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Trains the weights of a PatternEvaluator from self-play games and writes them to a file.
+ *
+ * Minimax plays games against itself with its default evaluation, starting from a few random
+ * moves so the games differ. Every position of every game becomes two training samples, one for
+ * each player, whose target is that player's final token difference. The weights are fitted to
+ * the samples by stochastic gradient descent on the squared error, and every tenth game is held
+ * out to report how well they predict games they were not fitted to.
+ *
+ * Given a game record file (see GameRecordWriter), the samples are taken from up to the given
+ * number of its games on boards of the given size instead, e.g. from a Tournament between strong
+ * AIs, and depth and randomMoves are not used.
+ *
+ * Usage: java PatternTrainer [file] [size] [games] [depth] [epochs] [randomMoves] [seed] [recordFile]
+ */
+public class PatternTrainer {
+    private static final double PATTERN_RATE = 0.002;   // Learning rate of the pattern weights
+    private static final double FEATURE_RATE = 0.0002;  // Learning rate of the feature weights, whose inputs are larger
+    private static final int TABLE_ENTRIES = 1 << 16;    // Plenty for the shallow self-play searches
+
+    private final PatternEvaluator evaluator;
+    private final int instanceCount;
+
+    // The samples, in growable arrays: per sample its phase, pattern indices, feature values and target
+    private int sampleCount;
+    private int[] phases = new int[1024];
+    private int[] indices;
+    private int[] features = new int[1024 * PatternEvaluator.FEATURES];
+    private double[] targets = new double[1024];
+    private boolean[] heldOut = new boolean[1024];
+
+    private PatternTrainer(int size) {
+        evaluator = new PatternEvaluator(size);
+        instanceCount = evaluator.getInstanceCount();
+        indices = new int[1024 * instanceCount];
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path file = Paths.get(args.length > 0 ? args[0] : "patterns-8.weights");
+        int size = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int games = args.length > 2 ? Integer.parseInt(args[2]) : 2000;
+        int depth = args.length > 3 ? Integer.parseInt(args[3]) : 3;
+        int epochs = args.length > 4 ? Integer.parseInt(args[4]) : 20;
+        int randomMoves = args.length > 5 ? Integer.parseInt(args[5]) : 8;
+        long seed = args.length > 6 ? Long.parseLong(args[6]) : 1;
+
+        PatternTrainer trainer = new PatternTrainer(size);
+        long start = System.nanoTime();
+        if (args.length > 7) {
+            int read = trainer.readGames(Paths.get(args[7]), size, games);
+            System.out.printf("%d games, %,d samples, %.0f s%n", read, trainer.sampleCount, (System.nanoTime() - start) / 1e9);
+        } else {
+            // One Minimax for all games, as allocating a table per game costs more than the searches
+            Minimax minimax = new Minimax(GameState.create(size, 1), depth, TABLE_ENTRIES, TranspositionTable.ReplacementPolicy.DEPTH_PREFERRED);
+            for (int game = 0; game < games; game++) {
+                minimax.getTranspositionTable().clear();
+                trainer.playGame(minimax, size, randomMoves, new Random(seed + game), game % 10 == 9);
+                if ((game + 1) % 100 == 0) {
+                    System.out.printf("%d games, %,d samples, %.0f s%n", game + 1, trainer.sampleCount, (System.nanoTime() - start) / 1e9);
+                }
+            }
+        }
+        trainer.fit(epochs, new Random(seed));
+        trainer.evaluator.save(file);
+        System.out.println("Wrote " + file);
+    }
+
+    /**
+     * Plays one self-play game with the given Minimax on both sides and adds its positions as samples.
+     */
+    private void playGame(Minimax minimax, int size, int randomMoves, Random random, boolean holdOut) {
+        GameState s = GameState.create(size, 1);
+        int first = sampleCount;
+        int[] moves = new int[size * size];
+        for (int ply = 0; ; ply++) {
+            int moveCount = s.legalMoves(moves);
+            if (moveCount == 0) {
+                if (s.isFinished(moveCount)) {
+                    break;
+                }
+                s.applyPass();
+                continue;
+            }
+            addSample(s, 1, holdOut);
+            addSample(s, 2, holdOut);
+            int move = ply < randomMoves ? moves[random.nextInt(moveCount)] : s.toSquare(minimax.decideMove(s));
+            s.applyMove(move);
+        }
+        int[] tokens = s.countTokens();
+        setTargets(first, tokens[0], tokens[1]);
+    }
+
+    /**
+     * Adds the positions of the games on boards of the given size in a game record file as samples.
+     * As in self-play, every tenth game is held out.
+     *
+     * @param games The largest number of games to read.
+     * @return The number of games read.
+     * @throws IllegalArgumentException If a game has an illegal move.
+     */
+    private int readGames(Path records, int size, int games) throws IOException {
+        int read = 0;
+        try (GameRecordReader reader = GameRecordReader.open(records)) {
+            while (read < games && reader.next()) {
+                if (reader.getSize() != size) {
+                    continue;
+                }
+                GameState s = GameState.create(size, 1);
+                boolean holdOut = read % 10 == 9;
+                int first = sampleCount;
+                for (int ply = 0; ply < reader.getPlies(); ply++) {
+                    int move = reader.getMove(ply);
+                    if (move == GameState.PASS) {
+                        s.applyPass();
+                        continue;
+                    }
+                    addSample(s, 1, holdOut);
+                    addSample(s, 2, holdOut);
+                    if (!s.applyMove(move)) {
+                        throw new IllegalArgumentException(records + " has an illegal move in game " + (read + 1) + " of size " + size);
+                    }
+                }
+                setTargets(first, reader.getBlackTokens(), reader.getWhiteTokens());
+                read++;
+            }
+        }
+        return read;
+    }
+
+    /**
+     * Sets the targets of the samples of one game, which alternate between black and white.
+     */
+    private void setTargets(int first, int blackTokens, int whiteTokens) {
+        for (int i = first; i < sampleCount; i += 2) {
+            targets[i] = blackTokens - whiteTokens;
+            targets[i + 1] = whiteTokens - blackTokens;
+        }
+    }
+
+    private void addSample(GameState s, int player, boolean holdOut) {
+        if (sampleCount == phases.length) {
+            int capacity = 2 * sampleCount;
+            phases = Arrays.copyOf(phases, capacity);
+            indices = Arrays.copyOf(indices, capacity * instanceCount);
+            features = Arrays.copyOf(features, capacity * PatternEvaluator.FEATURES);
+            targets = Arrays.copyOf(targets, capacity);
+            heldOut = Arrays.copyOf(heldOut, capacity);
+        }
+        int[] sampleIndices = new int[instanceCount];
+        int[] sampleFeatures = new int[PatternEvaluator.FEATURES];
+        phases[sampleCount] = evaluator.extract(s, player, sampleIndices, sampleFeatures);
+        System.arraycopy(sampleIndices, 0, indices, sampleCount * instanceCount, instanceCount);
+        System.arraycopy(sampleFeatures, 0, features, sampleCount * PatternEvaluator.FEATURES, PatternEvaluator.FEATURES);
+        heldOut[sampleCount] = holdOut;
+        sampleCount++;
+    }
+
+    /**
+     * Fits the weights to the training samples, in tokens, then stores them in the evaluator in
+     * 1/SCALE tokens. Prints the root mean squared error on the training and held-out samples
+     * after every epoch.
+     */
+    private void fit(int epochs, Random random) {
+        int entries = evaluator.getEntryCount();
+        double[][] patternWeights = new double[PatternEvaluator.PHASES][entries];
+        double[][] featureWeights = new double[PatternEvaluator.PHASES][PatternEvaluator.FEATURES];
+        int[] order = new int[sampleCount];
+        for (int i = 0; i < sampleCount; i++) {
+            order[i] = i;
+        }
+        double baseline = 0;
+        int baselineSamples = 0;
+        for (int sample = 0; sample < sampleCount; sample++) {
+            if (heldOut[sample]) {
+                baseline += targets[sample] * targets[sample];
+                baselineSamples++;
+            }
+        }
+        System.out.printf("held-out RMSE of always predicting a draw %.2f tokens%n", Math.sqrt(baseline / Math.max(1, baselineSamples)));
+        for (int epoch = 0; epoch < epochs; epoch++) {
+            for (int i = sampleCount - 1; i > 0; i--) { // Shuffle, so no game or phase dominates a stretch of updates
+                int j = random.nextInt(i + 1);
+                int swap = order[i];
+                order[i] = order[j];
+                order[j] = swap;
+            }
+            double decay = 1.0 / (1 + epoch * 0.5);
+            double trainingError = 0;
+            int trainingSamples = 0;
+            for (int sample : order) {
+                if (heldOut[sample]) {
+                    continue;
+                }
+                double[] pw = patternWeights[phases[sample]];
+                double[] fw = featureWeights[phases[sample]];
+                double error = targets[sample] - predict(sample, pw, fw);
+                trainingError += error * error;
+                trainingSamples++;
+                for (int k = 0; k < instanceCount; k++) {
+                    pw[indices[sample * instanceCount + k]] += PATTERN_RATE * decay * error;
+                }
+                for (int f = 0; f < PatternEvaluator.FEATURES; f++) {
+                    fw[f] += FEATURE_RATE * decay * error * features[sample * PatternEvaluator.FEATURES + f];
+                }
+            }
+            double testError = 0;
+            int testSamples = 0;
+            for (int sample = 0; sample < sampleCount; sample++) {
+                if (heldOut[sample]) {
+                    double error = targets[sample] - predict(sample, patternWeights[phases[sample]], featureWeights[phases[sample]]);
+                    testError += error * error;
+                    testSamples++;
+                }
+            }
+            System.out.printf("epoch %2d  training RMSE %.2f  held-out RMSE %.2f tokens%n", epoch + 1,
+                    Math.sqrt(trainingError / Math.max(1, trainingSamples)), Math.sqrt(testError / Math.max(1, testSamples)));
+        }
+        for (int phase = 0; phase < PatternEvaluator.PHASES; phase++) {
+            for (int i = 0; i < entries; i++) {
+                evaluator.patternWeights[phase][i] = quantize(patternWeights[phase][i]);
+            }
+            for (int f = 0; f < PatternEvaluator.FEATURES; f++) {
+                evaluator.featureWeights[phase][f] = quantize(featureWeights[phase][f]);
+            }
+        }
+    }
+
+    private double predict(int sample, double[] patternWeights, double[] featureWeights) {
+        double value = 0;
+        for (int k = 0; k < instanceCount; k++) {
+            value += patternWeights[indices[sample * instanceCount + k]];
+        }
+        for (int f = 0; f < PatternEvaluator.FEATURES; f++) {
+            value += featureWeights[f] * features[sample * PatternEvaluator.FEATURES + f];
+        }
+        return value;
+    }
+
+    private static short quantize(double tokens) {
+        long units = Math.round(tokens * PatternEvaluator.SCALE);
+        return (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, units));
+    }
+}
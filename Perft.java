@@ -0,0 +1,183 @@
+/**
+ * Counts the positions reachable in exactly N plies (perft), to check move generation and
+ * move making against known results and to measure their speed. A pass counts as a ply when
+ * the player in turn has no legal move but the opponent has; a finished game counts as one
+ * leaf at whatever depth it ends.
+ *
+ * Usage:
+ *   java Perft [depth] [size] [implementation]   counts depths 1..depth and prints nodes per second
+ *   java Perft verify [depth]                     checks the known 8x8 counts for every implementation
+ *   java Perft compare [depth] [size]             compares every implementation with the array one, move by move
+ * where implementation is one of IMPLEMENTATIONS; "default" is whatever GameState.create returns.
+ */
+public class Perft {
+    /** Names accepted as implementation */
+    public static final String[] IMPLEMENTATIONS = {"array", "bitboard", "multiword", "default"};
+
+    /** Perft counts of the 8x8 starting position with black to move, for depths 1 to 10 */
+    static final long[] KNOWN_8X8 = {4, 12, 56, 244, 1396, 8200, 55092, 390216, 3005288, 24571284};
+
+    private final int[][] moveBuffers;
+
+    private Perft(int size, int depth) {
+        moveBuffers = new int[depth + 1][size * size];
+    }
+
+    /**
+     * Counts the leaves of the game tree of the given depth below the given position.
+     * The state is changed during the count, but restored when it returns.
+     *
+     * @param s The position; it must support applyMove/applyPass/undoMove.
+     * @param depth The number of plies.
+     * @return The number of leaves.
+     */
+    public static long perft(GameState s, int depth) {
+        return new Perft(s.getSize(), depth).count(s, depth);
+    }
+
+    private long count(GameState s, int depth) {
+        if (depth == 0) {
+            return 1;
+        }
+        int[] moves = moveBuffers[depth];
+        int moveCount = s.legalMoves(moves);
+        if (moveCount == 0) {
+            int opponent = s.getPlayerInTurn() == 1 ? 2 : 1;
+            if (!s.hasLegalMove(opponent)) {
+                return 1; // The game is over
+            }
+            s.applyPass();
+            long nodes = count(s, depth - 1);
+            s.undoMove();
+            return nodes;
+        }
+        if (depth == 1) {
+            return moveCount;
+        }
+        long nodes = 0;
+        for (int i = 0; i < moveCount; i++) {
+            s.applyMove(moves[i]);
+            nodes += count(s, depth - 1);
+            s.undoMove();
+        }
+        return nodes;
+    }
+
+    /**
+     * Returns the starting position of the given implementation, with black to move.
+     *
+     * @param implementation One of IMPLEMENTATIONS.
+     * @param size The board size.
+     */
+    public static GameState newState(String implementation, int size) {
+        switch (implementation) {
+            case "array":
+                return new GameState(size, 1);
+            case "bitboard":
+                if (size != BitboardGameState.SIZE) {
+                    throw new IllegalArgumentException("The bitboard implementation only supports 8x8");
+                }
+                return new BitboardGameState(1);
+            case "multiword":
+                return new LargeBitboardGameState(size, 1);
+            case "default":
+                return GameState.create(size, 1);
+            default:
+                throw new IllegalArgumentException("Unknown implementation: " + implementation);
+        }
+    }
+
+    public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("verify")) {
+            int depth = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+            System.exit(verify(Math.min(depth, KNOWN_8X8.length)) ? 0 : 1);
+        }
+        if (args.length > 0 && args[0].equals("compare")) {
+            int depth = args.length > 1 ? Integer.parseInt(args[1]) : 6;
+            int size = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+            System.exit(compare(depth, size) ? 0 : 1);
+        }
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int size = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        String implementation = args.length > 2 ? args[2] : "default";
+        GameState s = newState(implementation, size);
+        System.out.printf("%s %dx%d%n", s.getClass().getName(), size, size);
+        for (int d = 1; d <= depth; d++) {
+            long start = System.nanoTime();
+            long nodes = perft(s, d);
+            long nanos = Math.max(1, System.nanoTime() - start);
+            System.out.printf("depth %2d  nodes %,15d  %8.3f s  %,14.0f nodes/s%n", d, nodes, nanos / 1e9, nodes * 1e9 / nanos);
+        }
+    }
+
+    /**
+     * Checks the counts of every 8x8 implementation against KNOWN_8X8 up to the given depth.
+     *
+     * @return Whether all counts matched.
+     */
+    static boolean verify(int depth) {
+        boolean ok = true;
+        for (String implementation : IMPLEMENTATIONS) {
+            GameState s = newState(implementation, 8);
+            for (int d = 1; d <= depth; d++) {
+                long nodes = perft(s, d);
+                boolean match = nodes == KNOWN_8X8[d - 1];
+                ok &= match;
+                System.out.printf("%-9s depth %2d  %,12d  %s%n", implementation, d, nodes,
+                        match ? "ok" : "FAILED, expected " + KNOWN_8X8[d - 1]);
+            }
+        }
+        return ok;
+    }
+
+    /**
+     * Compares every implementation with the array implementation, which is the reference, at the
+     * given depth and size. On a mismatch the counts below each first move are compared as well
+     * ("divide"), to narrow down the position where the implementations disagree.
+     *
+     * @return Whether all counts matched.
+     */
+    static boolean compare(int depth, int size) {
+        GameState reference = newState("array", size);
+        long expected = perft(reference, depth);
+        boolean ok = true;
+        for (String implementation : IMPLEMENTATIONS) {
+            GameState s;
+            try {
+                s = newState(implementation, size);
+            } catch (IllegalArgumentException e) {
+                System.out.printf("%-9s skipped: %s%n", implementation, e.getMessage());
+                continue;
+            }
+            long nodes = perft(s, depth);
+            System.out.printf("%-9s depth %2d  %,12d  %s%n", implementation, depth, nodes,
+                    nodes == expected ? "ok" : "FAILED, reference has " + expected);
+            if (nodes != expected) {
+                ok = false;
+                divide(reference, s, depth);
+            }
+        }
+        return ok;
+    }
+
+    /**
+     * Prints the counts below every first move of both positions where they differ.
+     */
+    private static void divide(GameState reference, GameState s, int depth) {
+        int[] moves = new int[reference.getSize() * reference.getSize()];
+        int moveCount = reference.legalMoves(moves);
+        for (int i = 0; i < moveCount; i++) {
+            reference.applyMove(moves[i]);
+            long expected = perft(reference, depth - 1);
+            reference.undoMove();
+            long nodes = -1;
+            if (s.applyMove(moves[i])) {
+                nodes = perft(s, depth - 1);
+                s.undoMove();
+            }
+            if (nodes != expected) {
+                System.out.printf("  after %s: %,d, reference has %,d%n", reference.toPosition(moves[i]), nodes, expected);
+            }
+        }
+    }
+}
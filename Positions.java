@@ -0,0 +1,109 @@
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Fixed suites of positions for regression runs and benchmarks. The positions are reached by
+ * random play from the starting position with a given seed, so the same arguments always give
+ * exactly the same positions.
+ */
+public class Positions {
+    private static final int PLIES_BEFORE_PASS = 10; // How far ahead of a pass the pass-heavy positions are taken
+
+    /**
+     * Returns positions in which a player will have to pass within a few plies, so that searching
+     * them runs into pass nodes. Every position has at least one legal move for the player in turn.
+     *
+     * @param size The board size.
+     * @param count The number of positions.
+     * @param seed The seed of the random games the positions are taken from.
+     * @return The positions, in the order they were found.
+     */
+    public static List<GameState> passHeavy(int size, int count, long seed) {
+        Random random = new Random(seed);
+        List<GameState> positions = new ArrayList<GameState>();
+        HashSet<Long> seen = new HashSet<Long>();
+        int[] moves = new int[size * size];
+        while (positions.size() < count) {
+            List<GameState> history = new ArrayList<GameState>();
+            GameState s = GameState.create(size, 1);
+            while (!s.isFinished() && positions.size() < count) {
+                int moveCount = s.legalMoves(moves);
+                if (moveCount == 0) {
+                    if (history.size() >= PLIES_BEFORE_PASS) {
+                        GameState before = history.get(history.size() - PLIES_BEFORE_PASS);
+                        if (seen.add(before.getHash())) {
+                            positions.add(before);
+                        }
+                    }
+                    s.changePlayer();
+                    continue;
+                }
+                history.add(s.copy());
+                s.insertToken(moves[random.nextInt(moveCount)]);
+            }
+        }
+        return positions;
+    }
+
+    /**
+     * Returns opening positions: about one move per column has been played.
+     */
+    public static List<GameState> opening(int size, int count, long seed) {
+        return withEmptySquares(size, size * size - 4 - size, count, seed);
+    }
+
+    /**
+     * Returns midgame positions: the board is about half full.
+     */
+    public static List<GameState> midgame(int size, int count, long seed) {
+        return withEmptySquares(size, size * size / 2, count, seed);
+    }
+
+    /**
+     * Returns endgame positions: about a quarter of the board is empty.
+     */
+    public static List<GameState> endgame(int size, int count, long seed) {
+        return withEmptySquares(size, size * size / 4, count, seed);
+    }
+
+    /**
+     * Returns positions with the given number of empty squares, one per random game, in which the
+     * player in turn has a legal move. Games that end or pass past that point are skipped.
+     *
+     * @param size The board size.
+     * @param empties The number of empty squares of each position.
+     * @param count The number of positions.
+     * @param seed The seed of the random games the positions are taken from.
+     * @return The positions, in the order they were found.
+     */
+    public static List<GameState> withEmptySquares(int size, int empties, int count, long seed) {
+        Random random = new Random(seed);
+        List<GameState> positions = new ArrayList<GameState>();
+        HashSet<Long> seen = new HashSet<Long>();
+        int[] moves = new int[size * size];
+        while (positions.size() < count) {
+            GameState s = GameState.create(size, 1);
+            while (!s.isFinished() && emptySquares(s) > empties) {
+                int moveCount = s.legalMoves(moves);
+                if (moveCount == 0) {
+                    s.changePlayer();
+                    continue;
+                }
+                s.insertToken(moves[random.nextInt(moveCount)]);
+            }
+            if (emptySquares(s) == empties && s.hasLegalMove(s.getPlayerInTurn()) && seen.add(s.getHash())) {
+                positions.add(s);
+            }
+        }
+        return positions;
+    }
+
+    /**
+     * Returns the number of empty squares of the given position.
+     */
+    public static int emptySquares(GameState s) {
+        return s.getSize() * s.getSize() - s.countTokens(1) - s.countTokens(2);
+    }
+}
@@ -0,0 +1,74 @@
+import java.util.List;
+
+/**
+ * Compares the node counts of the Minimax search options on a fixed suite of midgame positions
+ * (see Positions.midgame): plain alpha-beta, Principal Variation Search, iterative deepening, and
+ * aspiration windows on top of it. Every configuration gets a fresh Minimax with its own
+ * transposition table per position, and the endgame solver is off.
+ *
+ * For each configuration it prints the total nodes, the nodes relative to plain alpha-beta, the
+ * re-searches, the time, and on how many positions it chose a different move than plain
+ * alpha-beta. PVS must choose the same moves; iterative deepening may choose a different one of
+ * equally valued moves.
+ *
+ * Usage: java SearchBenchmark [size] [depth] [positions] [seed] [aspirationWindow]
+ */
+public class SearchBenchmark {
+    private static final long NO_TIME_LIMIT = 3_600_000; // A time budget that never runs out, to deepen iteratively
+
+    private static final String[] CONFIGURATIONS = {"alpha-beta", "pvs", "deepening", "deepening+aspiration", "deepening+aspiration+pvs"};
+
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int depth = args.length > 1 ? Integer.parseInt(args[1]) : 7;
+        int count = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : 1;
+        int window = args.length > 4 ? Integer.parseInt(args[4]) : 12;
+
+        List<GameState> positions = Positions.midgame(size, count, seed);
+        System.out.printf("%d positions, size %d, depth %d, aspiration window %d%n", positions.size(), size, depth, window);
+        System.out.printf("%-26s %14s %8s %12s %10s %10s%n", "configuration", "nodes", "nodes %", "re-searches", "ms", "other move");
+
+        Position[] baseline = null;
+        long baselineNodes = 0;
+        for (String configuration : CONFIGURATIONS) {
+            Position[] moves = new Position[positions.size()];
+            long nodes = 0;
+            long researches = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < positions.size(); i++) {
+                GameState s = positions.get(i);
+                Minimax minimax = newMinimax(s, depth, configuration, window);
+                moves[i] = minimax.decideMove(s);
+                nodes += minimax.getStats().getNodes();
+                researches += minimax.getStats().getResearches();
+            }
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            if (baseline == null) {
+                baseline = moves;
+                baselineNodes = nodes;
+            }
+            int different = 0;
+            for (int i = 0; i < moves.length; i++) {
+                if (moves[i].col != baseline[i].col || moves[i].row != baseline[i].row) {
+                    different++;
+                }
+            }
+            System.out.printf("%-26s %,14d %7.1f%% %,12d %10d %10d%n", configuration, nodes,
+                    100.0 * nodes / Math.max(1, baselineNodes), researches, millis, different);
+        }
+    }
+
+    private static Minimax newMinimax(GameState s, int depth, String configuration, int window) {
+        Minimax minimax = new Minimax(s, depth);
+        minimax.setEndgameThreshold(0);
+        minimax.setPrincipalVariationSearch(configuration.endsWith("pvs"));
+        if (configuration.startsWith("deepening")) {
+            minimax.setTimeBudget(NO_TIME_LIMIT);
+        }
+        if (configuration.contains("aspiration")) {
+            minimax.setAspirationWindow(window);
+        }
+        return minimax;
+    }
+}
@@ -0,0 +1,71 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Java Flight Recorder event emitted once per Minimax.decideMove with the statistics of the search.
+ * JFR events cost next to nothing while no recording is running, so they are always emitted; any
+ * recording picks them up, e.g. {@code java -XX:StartFlightRecording=filename=search.jfr ...}
+ * or a recording started from JDK Mission Control on a running game.
+ */
+@Name("othello.Search")
+@Label("Minimax Search")
+@Category("Othello")
+@Description("Statistics of one call to Minimax.decideMove")
+class SearchEvent extends Event {
+    @Label("Depth")
+    int depth;
+
+    @Label("Solved")
+    @Description("Whether the move was chosen by the exact endgame solver")
+    boolean solved;
+
+    @Label("Ponder Hit")
+    @Description("Whether the move came from searching the position while the opponent thought")
+    boolean ponderHit;
+
+    @Label("Nodes")
+    long nodes;
+
+    @Label("Cutoffs")
+    long cutoffs;
+
+    @Label("First Move Cutoff Rate")
+    double firstMoveCutoffRate;
+
+    @Label("Effective Branching Factor")
+    double effectiveBranchingFactor;
+
+    @Label("Table Hit Rate")
+    double tableHitRate;
+
+    /**
+     * Creates an event timed from now, to be finished when the search ends.
+     */
+    static SearchEvent start() {
+        SearchEvent event = new SearchEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends the event and commits it with the given statistics, if recording is enabled for it.
+     */
+    void finish(SearchStats stats) {
+        end();
+        if (!shouldCommit()) {
+            return;
+        }
+        depth = stats.getDepth();
+        solved = stats.isSolved();
+        ponderHit = stats.isPonderHit();
+        nodes = stats.getNodes();
+        cutoffs = stats.getCutoffs();
+        firstMoveCutoffRate = stats.getFirstMoveCutoffRate();
+        effectiveBranchingFactor = stats.getEffectiveBranchingFactor();
+        tableHitRate = stats.getTableHitRate();
+        commit();
+    }
+}
@@ -0,0 +1,142 @@
+/**
+ * Counters describing one Minimax search (one call to decideMove): how many nodes it visited, how
+ * often moves caused a cutoff and whether the first move did, and how much the transposition table
+ * helped. Every search thread counts into its own instance with plain fields, and the instances
+ * are merged when the search ends, so counting costs no synchronisation.
+ */
+public class SearchStats {
+    long nodes;             // Nodes visited, including leaves
+    long evaluations;       // Leaves scored by the evaluation function
+    long interiorNodes;     // Nodes whose moves were searched (not settled by the table, a leaf or a pass)
+    long cutoffs;           // Interior nodes that stopped early because a move exceeded the window
+    long firstMoveCutoffs;  // Cutoffs caused by the first move searched
+    long tableProbes;
+    long tableHits;         // Probes that found an entry for the position
+    long tableCutoffs;      // Hits that settled the node without searching it
+    long researches;        // Searches repeated with a wider window: PVS null-window fail-highs and aspiration failures
+    int depth;              // Depth of the deepest completed iteration, or the empties solved exactly
+    boolean solved;         // Whether the move was chosen by the endgame solver
+    boolean ponderHit;      // Whether the move came from a ponder search (see Minimax.setPondering)
+    long nanos;             // Wall-clock time of the search
+
+    /**
+     * Adds the counters of another thread's search to these.
+     */
+    void add(SearchStats other) {
+        nodes += other.nodes;
+        evaluations += other.evaluations;
+        interiorNodes += other.interiorNodes;
+        cutoffs += other.cutoffs;
+        firstMoveCutoffs += other.firstMoveCutoffs;
+        tableProbes += other.tableProbes;
+        tableHits += other.tableHits;
+        tableCutoffs += other.tableCutoffs;
+        researches += other.researches;
+    }
+
+    void reset() {
+        nodes = 0;
+        evaluations = 0;
+        interiorNodes = 0;
+        cutoffs = 0;
+        firstMoveCutoffs = 0;
+        tableProbes = 0;
+        tableHits = 0;
+        tableCutoffs = 0;
+        researches = 0;
+        depth = 0;
+        solved = false;
+        ponderHit = false;
+        nanos = 0;
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    public long getEvaluations() {
+        return evaluations;
+    }
+
+    public long getInteriorNodes() {
+        return interiorNodes;
+    }
+
+    public long getCutoffs() {
+        return cutoffs;
+    }
+
+    public long getFirstMoveCutoffs() {
+        return firstMoveCutoffs;
+    }
+
+    public long getTableProbes() {
+        return tableProbes;
+    }
+
+    public long getTableHits() {
+        return tableHits;
+    }
+
+    public long getTableCutoffs() {
+        return tableCutoffs;
+    }
+
+    public long getResearches() {
+        return researches;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public boolean isSolved() {
+        return solved;
+    }
+
+    public boolean isPonderHit() {
+        return ponderHit;
+    }
+
+    public long getNanos() {
+        return nanos;
+    }
+
+    /**
+     * Returns the fraction of cutoffs caused by the first move searched, or 0 if there were none.
+     * Close to 1 means the moves are ordered well.
+     */
+    public double getFirstMoveCutoffRate() {
+        return cutoffs == 0 ? 0 : (double) firstMoveCutoffs / cutoffs;
+    }
+
+    /**
+     * Returns the fraction of table probes that found an entry, or 0 if there were none.
+     */
+    public double getTableHitRate() {
+        return tableProbes == 0 ? 0 : (double) tableHits / tableProbes;
+    }
+
+    /**
+     * Returns the effective branching factor: the number b for which b^depth equals the number of
+     * nodes, i.e. how many moves per node the search effectively looked at. Returns 0 if the search
+     * had no depth.
+     */
+    public double getEffectiveBranchingFactor() {
+        return depth <= 0 || nodes <= 0 ? 0 : Math.pow(nodes, 1.0 / depth);
+    }
+
+    /**
+     * Returns the number of nodes visited per second.
+     */
+    public double getNodesPerSecond() {
+        return nanos <= 0 ? 0 : nodes * 1e9 / nanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("depth %d%s%s, %,d nodes in %.1f ms (%,.0f/s), EBF %.2f, cutoffs %,d (%.1f%% first move), table hits %.1f%% (%,d cutoffs), re-searches %,d",
+                depth, solved ? " (solved)" : "", ponderHit ? " (ponder hit)" : "", nodes, nanos / 1e6, getNodesPerSecond(), getEffectiveBranchingFactor(),
+                cutoffs, 100 * getFirstMoveCutoffRate(), 100 * getTableHitRate(), tableCutoffs, researches);
+    }
+}
@@ -0,0 +1,144 @@
+/**
+ * The 8 rotations and reflections of a square board (its dihedral symmetries), as square remap
+ * tables for boards of any size and as bit tricks for 8x8 bitboards. Mirrored positions have the
+ * same value, so tables keyed by position can share their entries (see GameState.canonicalSymmetry).
+ *
+ * The transformations, numbered as used everywhere, map the square (col, row) to:
+ *   0 (col, row)               identity
+ *   1 (last - col, row)        mirror the columns
+ *   2 (col, last - row)        mirror the rows
+ *   3 (last - col, last - row) rotate 180 degrees
+ *   4 (row, col)               transpose
+ *   5 (last - row, col)        transpose, then mirror the columns
+ *   6 (row, last - col)        transpose, then mirror the rows
+ *   7 (last - row, last - col) transpose, then rotate 180 degrees
+ * where last = size - 1.
+ */
+public class Symmetry {
+    /** Number of symmetries of a square board */
+    public static final int COUNT = 8;
+    /** The transformation that leaves the board as it is */
+    public static final int IDENTITY = 0;
+
+    private static final Symmetry[] cache = new Symmetry[64];
+
+    private final int[][] squares;  // squares[t][square] is where transformation t moves square to
+    private final int[][] inverses; // inverses[t][square] is the square transformation t moves to square
+
+    private Symmetry(int size){
+        squares = new int[COUNT][size * size];
+        inverses = new int[COUNT][size * size];
+        int last = size - 1;
+        for (int col = 0; col < size; col++) {
+            for (int row = 0; row < size; row++) {
+                int square = col * size + row;
+                squares[0][square] = col * size + row;
+                squares[1][square] = (last - col) * size + row;
+                squares[2][square] = col * size + (last - row);
+                squares[3][square] = (last - col) * size + (last - row);
+                squares[4][square] = row * size + col;
+                squares[5][square] = (last - row) * size + col;
+                squares[6][square] = row * size + (last - col);
+                squares[7][square] = (last - row) * size + (last - col);
+            }
+        }
+        for (int t = 0; t < COUNT; t++) {
+            for (int square = 0; square < size * size; square++) {
+                inverses[t][squares[t][square]] = square;
+            }
+        }
+    }
+
+    /**
+     * Returns the remap tables for boards of the given size. The tables are created once per size and shared.
+     *
+     * @param size The number of columns (and rows) of the board.
+     */
+    public static synchronized Symmetry forSize(int size){
+        if (size >= cache.length) {
+            return new Symmetry(size);
+        }
+        if (cache[size] == null) {
+            cache[size] = new Symmetry(size);
+        }
+        return cache[size];
+    }
+
+    /**
+     * Returns the square the given transformation moves a square to, e.g. a move of a position to
+     * the same move in its canonical form. GameState.PASS is left as it is.
+     *
+     * @param symmetry The transformation, 0 to 7.
+     * @param square The square index, col * size + row.
+     */
+    public int transform(int symmetry, int square){
+        return square < 0 ? square : squares[symmetry][square];
+    }
+
+    /**
+     * Returns the square the given transformation moves to the given square, i.e. undoes transform,
+     * e.g. to map a move of the canonical form back to the position. GameState.PASS is left as it is.
+     *
+     * @param symmetry The transformation, 0 to 7.
+     * @param square The square index, col * size + row.
+     */
+    public int inverse(int symmetry, int square){
+        return square < 0 ? square : inverses[symmetry][square];
+    }
+
+    /**
+     * Returns the table of transform for one transformation, indexed by square, for loops over a board.
+     * It must not be modified.
+     */
+    int[] squares(int symmetry){
+        return squares[symmetry];
+    }
+
+    /**
+     * Returns the table of inverse for one transformation, indexed by square. It must not be modified.
+     */
+    int[] inverses(int symmetry){
+        return inverses[symmetry];
+    }
+
+    /**
+     * Applies a transformation to an 8x8 bitboard with bit col*8 + row for the square (col, row),
+     * i.e. with one byte per column. Mirroring the columns reverses the bytes, mirroring the rows
+     * reverses the bits within each byte, and transposing swaps bits across the diagonal in three
+     * delta swaps.
+     *
+     * @param bits The bitboard.
+     * @param symmetry The transformation, 0 to 7.
+     * @return The transformed bitboard.
+     */
+    public static long transformBits(long bits, int symmetry){
+        if (symmetry >= 4) {
+            bits = transpose(bits);
+        }
+        switch (symmetry & 3) {
+            case 1:
+                return Long.reverseBytes(bits);
+            case 2:
+                return mirrorRows(bits);
+            case 3:
+                return Long.reverse(bits);
+            default:
+                return bits;
+        }
+    }
+
+    private static long mirrorRows(long bits){
+        bits = ((bits >>> 1) & 0x5555555555555555L) | ((bits & 0x5555555555555555L) << 1);
+        bits = ((bits >>> 2) & 0x3333333333333333L) | ((bits & 0x3333333333333333L) << 2);
+        return ((bits >>> 4) & 0x0F0F0F0F0F0F0F0FL) | ((bits & 0x0F0F0F0F0F0F0F0FL) << 4);
+    }
+
+    private static long transpose(long bits){
+        long t = 0x0F0F0F0F00000000L & (bits ^ (bits << 28));
+        bits ^= t ^ (t >>> 28);
+        t = 0x3333000033330000L & (bits ^ (bits << 14));
+        bits ^= t ^ (t >>> 14);
+        t = 0x5500550055005500L & (bits ^ (bits << 7));
+        return bits ^ t ^ (t >>> 7);
+    }
+}
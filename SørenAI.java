@@ -1,17 +1,64 @@
 /**
  * An AI implementation that uses the Minimax algorithm for decision-making.
  */
-public class SørenAI implements IOthelloAI {
+public class SørenAI implements InterruptibleAI {
+    private static final int MAX_DEPTH = 7;
+    private static final long TIME_BUDGET_MS = 1000; // Upper bound on the time spent per move
+    private static final boolean PONDER = Boolean.getBoolean("othello.ponder"); // Search on the opponent's time (see Minimax.setPondering)
+
+    private volatile Minimax minimax; // Kept for the whole game, so its transposition table carries over between moves
     
     /**
-     * Uses Minimax to determine the best move.
+     * Plays the move of the opening book if the position is in it (see OpeningBook.forSize),
+     * and otherwise uses Minimax to determine the best move.
      *
      * @param s The current game state.
      * @return The best move determined by Minimax.
      */
     @Override
     public Position decideMove(GameState s) {
-        Minimax minimax = new Minimax(s, 7);
+        OpeningBook book = OpeningBook.forSize(s.getSize());
+        if (book != null) {
+            Position move = book.getMove(s);
+            if (move != null) {
+                return move;
+            }
+        }
+        if (minimax == null) {
+            Minimax m = new Minimax(s, MAX_DEPTH);
+            m.setTimeBudget(TIME_BUDGET_MS);
+            m.setEvaluator(PatternEvaluator.forSize(s.getSize())); // Trained weights, if there are any
+            m.setPondering(PONDER);
+            minimax = m; // Published once set up, as stopSearch may read it from another thread
+        }
         return minimax.decideMove(s);
     }
-}
\ No newline at end of file
+
+    @Override
+    public void stopSearch() {
+        Minimax m = minimax;
+        if (m != null) {
+            m.stopSearch();
+        }
+    }
+
+    @Override
+    public int getSearchDepth() {
+        Minimax m = minimax;
+        return m == null ? 0 : m.getSearchDepth();
+    }
+
+    @Override
+    public long getSearchNodes() {
+        Minimax m = minimax;
+        return m == null ? 0 : m.getSearchNodes();
+    }
+
+    @Override
+    public void gameOver() {
+        Minimax m = minimax;
+        if (m != null) {
+            m.stopPondering();
+        }
+    }
+}
@@ -0,0 +1,389 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Plays many games between two AIs without a GUI and reports the results: wins, draws and losses,
+ * the token difference, and how long the AIs took per move. Games are played in parallel on a pool
+ * of worker threads, with new AI instances for every game so no state carries over between games.
+ *
+ * Games are played in pairs from the same opening, once with each AI as black. The opening is a few
+ * random moves chosen from the game number, so a run with the same arguments plays the same games.
+ * Given a record file, every game that ends normally is appended to it (see GameRecordWriter), in
+ * game order.
+ *
+ * Usage: java Tournament OthelloAI1 OthelloAI2 [games] [size] [threads] [openingMoves] [recordFile]
+ */
+public class Tournament {
+    private static final int DEFAULT_GAMES = 100;
+    private static final int DEFAULT_OPENING_MOVES = 4;
+    private static final double[] PERCENTILES = {50, 90, 99, 100};
+
+    /**
+     * The outcome of a single game, seen from AI 1.
+     */
+    static class GameResult {
+        final int game;
+        final boolean ai1Black;      // Whether AI 1 played black (player 1) in this game
+        int ai1Tokens;
+        int ai2Tokens;
+        String error;                // Set when an AI chose an illegal move or threw; that AI loses the game
+        boolean ai1Failed;
+        long[] ai1Latencies = new long[0]; // Nanoseconds per decideMove call
+        long[] ai2Latencies = new long[0];
+        GameRecord record;           // The moves of the game, unless it ended by an error
+
+        GameResult(int game, boolean ai1Black){
+            this.game = game;
+            this.ai1Black = ai1Black;
+        }
+
+        /**
+         * Returns 1 if AI 1 won, 0 for a draw and -1 if AI 1 lost.
+         */
+        int outcome(){
+            if (error != null) {
+                return ai1Failed ? -1 : 1;
+            }
+            return Integer.signum(ai1Tokens - ai2Tokens);
+        }
+    }
+
+    private final String ai1Name;
+    private final String ai2Name;
+    private final int size;
+    private final int openingMoves;
+    private GameRecordWriter recorder;
+
+    /**
+     * Creates a tournament between two AI classes.
+     *
+     * @param ai1Name The class name of the first AI, as accepted by Othello.parseGameLogicParam.
+     * @param ai2Name The class name of the second AI.
+     * @param size The board size.
+     * @param openingMoves The number of random moves played before the AIs take over.
+     */
+    public Tournament(String ai1Name, String ai2Name, int size, int openingMoves){
+        this.ai1Name = ai1Name;
+        this.ai2Name = ai2Name;
+        this.size = size;
+        this.openingMoves = openingMoves;
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            printHelp("You need to supply at least two arguments");
+            System.exit(1);
+        }
+        int games = DEFAULT_GAMES;
+        int size = 8;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int openingMoves = DEFAULT_OPENING_MOVES;
+        try {
+            if (args.length > 2) games = Integer.parseInt(args[2]);
+            if (args.length > 3) size = Integer.parseInt(args[3]);
+            if (args.length > 4) threads = Integer.parseInt(args[4]);
+            if (args.length > 5) openingMoves = Integer.parseInt(args[5]);
+        } catch (NumberFormatException nfe) {
+            printHelp("Could not parse number: " + nfe.getMessage());
+            System.exit(1);
+        }
+        if (size < 4 || size % 2 != 0) {
+            printHelp("Board size should be an even number greater than 2");
+            System.exit(1);
+        }
+
+        Tournament tournament = new Tournament(args[0], args[1], size, openingMoves);
+        try {
+            tournament.newAI(args[0]); // Fail early on a bad class name instead of in every game
+            tournament.newAI(args[1]);
+        } catch (ReflectiveOperationException | IllegalArgumentException e) {
+            printHelp(e.toString());
+            System.exit(1);
+        }
+
+        if (args.length > 6) {
+            try {
+                tournament.setRecorder(GameRecordWriter.open(Paths.get(args[6])));
+            } catch (IOException | IllegalArgumentException e) {
+                printHelp("Could not open record file: " + e.getMessage());
+                System.exit(1);
+            }
+        }
+
+        long start = System.nanoTime();
+        List<GameResult> results;
+        try {
+            results = tournament.play(games, threads);
+        } finally {
+            tournament.closeRecorder();
+        }
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        tournament.report(results, System.out);
+        System.out.printf("%d games on %d threads in %.1f s%n", results.size(), threads, millis / 1000.0);
+    }
+
+    /**
+     * Printing error and help-message
+     */
+    public static void printHelp(String errMsg) {
+        if (!errMsg.equals("")) {
+            System.err.println(errMsg);
+        }
+        System.err.println("Usage: java Tournament OthelloAI1 OthelloAI2 [games] [size] [threads] [openingMoves] [recordFile]");
+        System.err.println("\tOthelloAI1/2\t - OthelloAI classes implementing IOthelloAI.");
+        System.err.println("\tgames\t\t - Number of games. Defaults to " + DEFAULT_GAMES + ".");
+        System.err.println("\tsize\t\t - Must be an even integer greater or equal to 4. Defaults to 8.");
+        System.err.println("\tthreads\t\t - Number of games played at the same time. Defaults to the number of cores.");
+        System.err.println("\topeningMoves\t - Random moves before the AIs take over. Defaults to " + DEFAULT_OPENING_MOVES + ".");
+        System.err.println("\trecordFile\t - Game record file the games are appended to. Not recorded by default.");
+    }
+
+    /**
+     * Makes play append every game that ends normally to the given writer.
+     */
+    public void setRecorder(GameRecordWriter recorder) {
+        this.recorder = recorder;
+    }
+
+    private void closeRecorder() {
+        if (recorder != null) {
+            try {
+                recorder.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Plays the given number of games on a pool of worker threads.
+     *
+     * @param games The number of games.
+     * @param threads The number of games played at the same time.
+     * @return The results, in game order.
+     */
+    public List<GameResult> play(int games, int threads) {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<GameResult>> futures = new ArrayList<Future<GameResult>>();
+            for (int game = 0; game < games; game++) {
+                final int g = game;
+                futures.add(pool.submit(() -> playGame(g)));
+            }
+            List<GameResult> results = new ArrayList<GameResult>();
+            for (Future<GameResult> future : futures) {
+                GameResult result = future.get();
+                if (recorder != null && result.record != null) {
+                    recorder.append(result.record);
+                }
+                results.add(result);
+            }
+            return results;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Tournament interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Game failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Plays one game with new instances of both AIs. Games 2k and 2k+1 share their opening,
+     * with the colours swapped.
+     */
+    GameResult playGame(int game) {
+        boolean ai1Black = game % 2 == 0;
+        GameResult result = new GameResult(game, ai1Black);
+        IOthelloAI ai1;
+        IOthelloAI ai2;
+        try {
+            ai1 = newAI(ai1Name);
+            ai2 = newAI(ai2Name);
+        } catch (ReflectiveOperationException e) {
+            result.error = "Could not create AI: " + e;
+            result.ai1Failed = true;
+            return result;
+        }
+
+        GameState state = GameState.create(size, 1);
+        GameRecord record = new GameRecord(size, ai1Black ? ai1Name : ai2Name, ai1Black ? ai2Name : ai1Name);
+        playOpening(state, new Random(game / 2), record);
+        long[][] latencies = {new long[16], new long[16]}; // Per AI: 0 for AI 1, 1 for AI 2
+        int[] moveCounts = new int[2];
+        int[] moves = new int[size * size];
+        while (true) {
+            int moveCount = state.legalMoves(moves);
+            if (state.isFinished(moveCount)) {
+                break;
+            }
+            if (moveCount == 0) {
+                state.changePlayer();
+                record.addPass();
+                continue;
+            }
+            boolean ai1InTurn = (state.getPlayerInTurn() == 1) == ai1Black;
+            int index = ai1InTurn ? 0 : 1;
+            IOthelloAI ai = ai1InTurn ? ai1 : ai2;
+            Position move;
+            long start = System.nanoTime();
+            try {
+                move = ai.decideMove(state.copy()); // A copy, so an AI cannot change the real game
+            } catch (RuntimeException e) {
+                result.error = (ai1InTurn ? ai1Name : ai2Name) + " threw " + e;
+                result.ai1Failed = ai1InTurn;
+                break;
+            }
+            long elapsed = System.nanoTime() - start;
+            if (moveCounts[index] == latencies[index].length) {
+                latencies[index] = Arrays.copyOf(latencies[index], latencies[index].length * 2);
+            }
+            latencies[index][moveCounts[index]++] = elapsed;
+            if (!state.insertToken(move)) {
+                result.error = (ai1InTurn ? ai1Name : ai2Name) + " chose the illegal move " + move;
+                result.ai1Failed = ai1InTurn;
+                break;
+            }
+            record.addMove(state.toSquare(move), elapsed);
+        }
+        gameOver(ai1);
+        gameOver(ai2);
+        if (result.error == null) {
+            record.setScore(state);
+            result.record = record;
+        }
+        result.ai1Tokens = state.countTokens(ai1Black ? 1 : 2);
+        result.ai2Tokens = state.countTokens(ai1Black ? 2 : 1);
+        result.ai1Latencies = Arrays.copyOf(latencies[0], moveCounts[0]);
+        result.ai2Latencies = Arrays.copyOf(latencies[1], moveCounts[1]);
+        return result;
+    }
+
+    /**
+     * Plays random legal moves for the opening, stopping early if the game ends, and records them
+     * with no think time.
+     */
+    private void playOpening(GameState state, Random random, GameRecord record) {
+        int[] moves = new int[size * size];
+        for (int i = 0; i < openingMoves; i++) {
+            int moveCount = state.legalMoves(moves);
+            if (state.isFinished(moveCount)) {
+                break;
+            }
+            if (moveCount == 0) {
+                state.changePlayer();
+                record.addPass();
+                moveCount = state.legalMoves(moves);
+            }
+            int move = moves[random.nextInt(moveCount)];
+            state.insertToken(move);
+            record.addMove(move, 0);
+        }
+    }
+
+    /**
+     * Lets the AI stop what it does in the background, e.g. pondering, before the next game starts.
+     */
+    private static void gameOver(IOthelloAI ai) {
+        if (ai instanceof InterruptibleAI) {
+            ((InterruptibleAI) ai).gameOver();
+        }
+    }
+
+    private IOthelloAI newAI(String name) throws ReflectiveOperationException {
+        IOthelloAI ai = Othello.parseGameLogicParam(name);
+        if (ai == null) {
+            throw new IllegalArgumentException("Human players cannot take part in a tournament");
+        }
+        return ai;
+    }
+
+    /**
+     * Prints the results from the view of AI 1: wins, draws and losses overall and per colour,
+     * the token difference, and the per-move latency percentiles of both AIs.
+     */
+    void report(List<GameResult> results, PrintStream out) {
+        int[][] outcomes = new int[2][3]; // [AI 1 black ? 0 : 1][win, draw, loss]
+        long differenceSum = 0;
+        long differenceSquares = 0;
+        int errors = 0;
+        List<long[]> ai1Latencies = new ArrayList<long[]>();
+        List<long[]> ai2Latencies = new ArrayList<long[]>();
+        for (GameResult r : results) {
+            outcomes[r.ai1Black ? 0 : 1][1 - r.outcome()]++;
+            int difference = r.ai1Tokens - r.ai2Tokens;
+            differenceSum += difference;
+            differenceSquares += (long) difference * difference;
+            ai1Latencies.add(r.ai1Latencies);
+            ai2Latencies.add(r.ai2Latencies);
+            if (r.error != null) {
+                errors++;
+                out.println("game " + r.game + ": " + r.error);
+            }
+        }
+
+        int games = results.size();
+        int wins = outcomes[0][0] + outcomes[1][0];
+        int draws = outcomes[0][1] + outcomes[1][1];
+        int losses = outcomes[0][2] + outcomes[1][2];
+        out.printf("%s vs %s, %d games on %dx%d%n", ai1Name, ai2Name, games, size, size);
+        out.printf("  W/D/L %d/%d/%d  score %.1f%%%n", wins, draws, losses,
+                games == 0 ? 0 : 100.0 * (wins + 0.5 * draws) / games);
+        out.printf("  as black %d/%d/%d  as white %d/%d/%d%n",
+                outcomes[0][0], outcomes[0][1], outcomes[0][2], outcomes[1][0], outcomes[1][1], outcomes[1][2]);
+        if (games > 0) {
+            double mean = (double) differenceSum / games;
+            double deviation = Math.sqrt(Math.max(0, (double) differenceSquares / games - mean * mean));
+            out.printf("  token difference %+.2f (sd %.2f)%n", mean, deviation);
+        }
+        if (errors > 0) {
+            out.printf("  %d games ended by an illegal move or exception%n", errors);
+        }
+        printLatencies(out, ai1Name, ai1Latencies);
+        printLatencies(out, ai2Name, ai2Latencies);
+    }
+
+    private static void printLatencies(PrintStream out, String name, List<long[]> perGame) {
+        int total = 0;
+        for (long[] l : perGame) {
+            total += l.length;
+        }
+        long[] all = new long[total];
+        int n = 0;
+        for (long[] l : perGame) {
+            System.arraycopy(l, 0, all, n, l.length);
+            n += l.length;
+        }
+        Arrays.sort(all);
+        StringBuilder line = new StringBuilder(String.format("  %s: %d moves, ms per move", name, total));
+        for (double p : PERCENTILES) {
+            double millis = percentile(all, p) / 1e6;
+            line.append(p == 100 ? String.format("  max %.2f", millis) : String.format("  p%.0f %.2f", p, millis));
+        }
+        out.println(line);
+    }
+
+    /**
+     * Returns the value at the given percentile (nearest rank) of sorted values, or 0 if there are none.
+     */
+    private static long percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(p / 100 * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length, rank) - 1)];
+    }
+}
@@ -0,0 +1,176 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed-size hash table remembering the results of earlier searches, keyed by Zobrist hash.
+ * Each entry takes two longs (16 bytes): the key and the packed result, which holds the value,
+ * the remaining depth it was searched to, whether the value is exact or a lower/upper bound,
+ * and the best move found. The key is stored XORed with the data, so an entry that was torn by
+ * concurrent writers simply fails verification and is treated as a miss. The probe, hit and store
+ * counters are LongAdders, so they stay exact when several search threads share the table.
+ */
+public class TranspositionTable {
+
+    /**
+     * Decides whether a new result may overwrite the entry already stored in its slot.
+     */
+    public enum ReplacementPolicy {
+        /** Always overwrite the stored entry. */
+        ALWAYS,
+        /** Only overwrite entries from earlier searches or searched to at most the same depth. */
+        DEPTH_PREFERRED
+    }
+
+    public static final int EXACT = 1;  // The value is the exact minimax value
+    public static final int LOWER = 2;  // The true value is at least the stored value (search failed high)
+    public static final int UPPER = 3;  // The true value is at most the stored value (search failed low)
+
+    // Layout of the data word: value (32 bits) | depth (8) | bound (2) | move + 1 (12) | generation (8)
+    private static final int DEPTH_SHIFT = 32;
+    private static final int BOUND_SHIFT = 40;
+    private static final int MOVE_SHIFT = 42;
+    private static final int GENERATION_SHIFT = 54;
+
+    private final long[] keys;
+    private final long[] data;
+    private final int mask;
+    private final ReplacementPolicy policy;
+    private int generation;
+
+    private final LongAdder probes = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder stores = new LongAdder();
+
+    /**
+     * Creates a table with room for the given number of entries, rounded down to a power of two.
+     * The table never grows, so it uses 16 bytes per entry for its whole lifetime.
+     *
+     * @param entries The maximum number of entries (at least 1).
+     * @param policy The replacement policy used when two positions map to the same slot.
+     */
+    public TranspositionTable(int entries, ReplacementPolicy policy){
+        int capacity = Integer.highestOneBit(Math.max(1, entries));
+        this.keys = new long[capacity];
+        this.data = new long[capacity];
+        this.mask = capacity - 1;
+        this.policy = policy;
+    }
+
+    /**
+     * Looks up the given position.
+     *
+     * @param hash The Zobrist hash of the position.
+     * @return The packed entry, to be read with value(), depth(), bound() and move(), or 0 if absent.
+     */
+    public long probe(long hash){
+        probes.increment();
+        int index = (int) hash & mask;
+        long entry = data[index];
+        if (entry != 0 && (keys[index] ^ entry) == hash) {
+            hits.increment();
+            return entry;
+        }
+        return 0;
+    }
+
+    /**
+     * Stores the result of searching the given position, subject to the replacement policy.
+     *
+     * @param hash The Zobrist hash of the position.
+     * @param value The value found.
+     * @param depth The remaining depth the position was searched to (0-255).
+     * @param bound EXACT, LOWER or UPPER.
+     * @param move The best move found as a square index, or -1 if none.
+     */
+    public void store(long hash, int value, int depth, int bound, int move){
+        int index = (int) hash & mask;
+        long old = data[index];
+        if (policy == ReplacementPolicy.DEPTH_PREFERRED && old != 0
+                && generation(old) == (generation & 0xFF) && depth(old) > depth
+                && (keys[index] ^ old) != hash) {
+            return;
+        }
+        long entry = (value & 0xFFFFFFFFL)
+                | ((long) depth << DEPTH_SHIFT)
+                | ((long) bound << BOUND_SHIFT)
+                | ((long) (move + 1) << MOVE_SHIFT)
+                | ((long) (generation & 0xFF) << GENERATION_SHIFT);
+        data[index] = entry;
+        keys[index] = hash ^ entry;
+        stores.increment();
+    }
+
+    /**
+     * Marks the start of a new search, so entries of earlier searches are replaced first.
+     */
+    public void newSearch(){
+        generation++;
+    }
+
+    /**
+     * Removes all entries and resets the statistics.
+     */
+    public void clear(){
+        Arrays.fill(keys, 0);
+        Arrays.fill(data, 0);
+        probes.reset();
+        hits.reset();
+        stores.reset();
+    }
+
+    public static int value(long entry){
+        return (int) entry;
+    }
+
+    public static int depth(long entry){
+        return (int) (entry >>> DEPTH_SHIFT) & 0xFF;
+    }
+
+    public static int bound(long entry){
+        return (int) (entry >>> BOUND_SHIFT) & 0x3;
+    }
+
+    public static int move(long entry){
+        return ((int) (entry >>> MOVE_SHIFT) & 0xFFF) - 1;
+    }
+
+    private static int generation(long entry){
+        return (int) (entry >>> GENERATION_SHIFT) & 0xFF;
+    }
+
+    /**
+     * Returns the number of entries the table can hold.
+     */
+    public int capacity(){
+        return keys.length;
+    }
+
+    /**
+     * Returns the number of lookups since the table was created or cleared.
+     */
+    public long getProbes(){
+        return probes.sum();
+    }
+
+    /**
+     * Returns the number of lookups that found an entry for the position.
+     */
+    public long getHits(){
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of entries written.
+     */
+    public long getStores(){
+        return stores.sum();
+    }
+
+    /**
+     * Returns the fraction of lookups that found an entry, or 0 if there were none.
+     */
+    public double getHitRate(){
+        long probed = probes.sum();
+        return probed == 0 ? 0 : (double) hits.sum() / probed;
+    }
+}
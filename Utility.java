@@ -1,9 +1,18 @@
+import java.util.Arrays;
+
 /**
  * The Utility class calculates position-based values for the Othello board.
  * It assigns utility scores to different board positions based on strategic importance.
+ * The values only depend on the board size, so use forSize() to share one immutable table
+ * per size instead of computing it again.
  */
 public class Utility {
-    private int[][] utilityValue;
+    private static final Utility[] cache = new Utility[64];
+
+    private final int[][] utilityValue;
+    private final int[] squareValue;   // The same values indexed by square, col * size + row
+    private final int[] distinctValues; // Every value occurring on the board...
+    private final long[] valueMasks;    // ...and, on 8x8 boards, a bitboard mask of the squares having it
 
     /**
      * Constructs a Utility instance and initializes the utility value table.
@@ -11,7 +20,45 @@ public class Utility {
      * @param s The current game state from which the board dimensions are derived.
      */
     public Utility(GameState s){
-        this.utilityValue = populate(s);
+        this(s.getSize());
+    }
+
+    private Utility(int n){
+        this.utilityValue = populate(n);
+        this.squareValue = new int[n * n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                squareValue[i * n + j] = utilityValue[i][j];
+            }
+        }
+        this.distinctValues = Arrays.stream(squareValue).distinct().toArray();
+        this.valueMasks = new long[distinctValues.length];
+        if (n == BitboardGameState.SIZE) {
+            for (int square = 0; square < n * n; square++) {
+                for (int k = 0; k < distinctValues.length; k++) {
+                    if (squareValue[square] == distinctValues[k]) {
+                        valueMasks[k] |= 1L << square;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the utility table for boards of the given size. Tables are computed once per size and
+     * shared, which is safe as they are never changed.
+     *
+     * @param n The number of columns (and rows) of the board.
+     * @return The utility table for that size.
+     */
+    public static synchronized Utility forSize(int n){
+        if (n >= cache.length) {
+            return new Utility(n);
+        }
+        if (cache[n] == null) {
+            cache[n] = new Utility(n);
+        }
+        return cache[n];
     }
 
     /**
@@ -24,14 +71,57 @@ public class Utility {
         return utilityValue[p.col][p.row];
     }
 
+    /**
+     * Returns the utility value for the position with the given column and row.
+     *
+     * @param col The column of the position.
+     * @param row The row of the position.
+     * @return The utility score associated with the position.
+     */
+    public int moveUtility(int col, int row){
+        return utilityValue[col][row];
+    }
+
+    /**
+     * Returns the utility value for the given square.
+     *
+     * @param square The square index, col * size + row.
+     * @return The utility score associated with the square.
+     */
+    public int squareUtility(int square){
+        return squareValue[square];
+    }
+
+    /**
+     * Returns the utility values indexed by square (col * size + row). The array is shared and
+     * must not be modified.
+     */
+    int[] squareValues(){
+        return squareValue;
+    }
+
+    /**
+     * Returns every distinct utility value; valueMasks() holds the squares of each.
+     */
+    int[] distinctValues(){
+        return distinctValues;
+    }
+
+    /**
+     * For 8x8 boards, returns per distinct value a bitboard mask of the squares having that value,
+     * so positional scores can be computed with one popcount per value.
+     */
+    long[] valueMasks(){
+        return valueMasks;
+    }
+
     /**
      * Generates a utility value matrix for the board based on strategic positioning.
      *
-     * @param s The current game state.
+     * @param n The number of columns (and rows) of the board.
      * @return A 2D array where each position is assigned a utility score.
      */
-    public int[][] populate(GameState s){
-        int n = s.getBoard().length;
+    private static int[][] populate(int n){
         int[][] utilities = new int[n][n];
 
         // Define utility values
@@ -0,0 +1,79 @@
+import java.util.SplittableRandom;
+
+/**
+ * Zobrist keys for hashing Othello positions. A position's hash is the XOR of one random key
+ * per occupied square and token colour, plus a key when player 2 is in turn. Placing, flipping
+ * or removing a token, and changing the player in turn, then only takes an XOR to update.
+ * Keys are generated from a fixed seed, so hashes are the same in every run and can be stored.
+ */
+public class Zobrist {
+    private static final long SEED = 0x5DEECE66DL;
+    private static final Zobrist[] cache = new Zobrist[64];
+
+    private final long[][] tokenKeys; // tokenKeys[player - 1][square]
+    private final long whiteToMove;
+
+    private Zobrist(int size){
+        SplittableRandom random = new SplittableRandom(SEED + size);
+        tokenKeys = new long[2][size * size];
+        for (int player = 0; player < 2; player++) {
+            for (int square = 0; square < size * size; square++) {
+                tokenKeys[player][square] = random.nextLong();
+            }
+        }
+        whiteToMove = random.nextLong();
+    }
+
+    /**
+     * Returns the keys for boards of the given size. The keys are created once per size and shared.
+     *
+     * @param size The number of columns (and rows) of the board.
+     * @return The Zobrist keys for that board size.
+     */
+    public static synchronized Zobrist forSize(int size){
+        if (size >= cache.length) {
+            return new Zobrist(size);
+        }
+        if (cache[size] == null) {
+            cache[size] = new Zobrist(size);
+        }
+        return cache[size];
+    }
+
+    /**
+     * Returns the key of a token of the given player on the given square.
+     *
+     * @param player The owner of the token (1 or 2).
+     * @param square The square index, col * size + row.
+     */
+    public long token(int player, int square){
+        return tokenKeys[player - 1][square];
+    }
+
+    /**
+     * Returns the key that is XORed into the hash while player 2 is in turn.
+     */
+    public long whiteToMove(){
+        return whiteToMove;
+    }
+
+    /**
+     * Computes the hash of a position from scratch.
+     *
+     * @param board The board, with values 0 (empty), 1 (black) or 2 (white).
+     * @param playerInTurn The player in turn (1 or 2).
+     * @return The Zobrist hash of the position.
+     */
+    public long hash(int[][] board, int playerInTurn){
+        int size = board.length;
+        long hash = playerInTurn == 2 ? whiteToMove : 0;
+        for (int col = 0; col < size; col++) {
+            for (int row = 0; row < size; row++) {
+                if (board[col][row] != 0) {
+                    hash ^= token(board[col][row], col * size + row);
+                }
+            }
+        }
+        return hash;
+    }
+}